@@ -0,0 +1,87 @@
+package com.ctse.androidgamereviewer;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Opens and closes the game details screen many times. Every launch shares the repositories and
+ * their executors, so the app must end with no more threads than it had after the first
+ * launches.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetailsScreenSoakTest {
+
+    private static final String TAG = "DetailsScreenSoakTest";
+    private static final int WARM_UP_LAUNCHES = 5;
+    private static final int LAUNCHES = 1_000;
+    /**
+     * Idle executor threads stop after 30 seconds, so wait a little longer than that
+     */
+    private static final long SETTLE_MILLIS = 45_000;
+
+    private final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+
+    @Test
+    public void openingDetailsRepeatedly_keepsThreadCountFlat() {
+        for (int i = 0; i < WARM_UP_LAUNCHES; i++) {
+            openAndClose(i);
+        }
+        int before = countThreads();
+
+        for (int i = 0; i < LAUNCHES; i++) {
+            openAndClose(i);
+        }
+
+        int after = countThreads();
+        long deadline = SystemClock.uptimeMillis() + SETTLE_MILLIS;
+        while (after > before && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(1_000);
+            after = countThreads();
+        }
+
+        Log.i(TAG, String.format("%d threads after warm up, %d after %d launches",
+                before, after, LAUNCHES));
+        assertTrue("threads grew from " + before + " to " + after, after <= before);
+    }
+
+    private void openAndClose(int launch) {
+        Intent intent = new Intent(instrumentation.getTargetContext(),
+                ViewGameDetailsActivity.class);
+        intent.putExtra(GameViewAdapter.EXTRA_GAME_ID, "soak-game-" + (launch % 10));
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+        final Activity activity = instrumentation.startActivitySync(intent);
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                activity.finish();
+            }
+        });
+        instrumentation.waitForIdleSync();
+    }
+
+    /**
+     * Counts the threads of the app. Binder threads are left out, the system starts and stops
+     * them on its own as the process handles IPC.
+     */
+    private static int countThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!thread.getName().startsWith("Binder")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
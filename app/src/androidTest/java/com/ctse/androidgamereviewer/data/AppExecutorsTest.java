@@ -0,0 +1,73 @@
+package com.ctse.androidgamereviewer.data;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the lanes of AppExecutors are independent and bounded.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AppExecutorsTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void shutdown() throws InterruptedException {
+        release.countDown();
+        AppExecutors.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void userWrite_doesNotWaitBehindSync() throws Exception {
+        AppExecutors executors = AppExecutors.getInstance();
+        Future<?> sync = executors.sync().submit(new Blocker());
+
+        Future<?> write = executors.userWrites().submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+
+        write.get(1, TimeUnit.SECONDS);
+        assertFalse(sync.isDone());
+    }
+
+    @Test
+    public void fullQueue_refusesTasks() {
+        AppExecutors executors = AppExecutors.getInstance();
+        try {
+            for (int i = 0; i < 100; i++) {
+                executors.sync().execute(new Blocker());
+            }
+            fail("Sync queue is not bounded");
+        } catch (RejectedExecutionException expected) {
+            // The tasks beyond the queue are refused instead of piling up
+        }
+    }
+
+    /**
+     * Holds its thread until the test ends
+     */
+    private class Blocker implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.ctse.androidgamereviewer.data;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.room.Room;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the newest first and top rated game lists are read in order from their indexes,
+ * as GameDAO documents, rather than sorted at query time. The queries are the ones of
+ * GameDAO, and a TEMP B-TREE in the plan would mean every matching game is sorted.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GameQueryPlanTest {
+
+    private static final String SUMMARIES = "SELECT Game.id, Game._id, game_title, genre, "
+            + "image_hash, IFNULL(review_count, 0) AS review_count, "
+            + "IFNULL(average_rating, 0) AS average_rating "
+            + "FROM Game LEFT JOIN GameRating ON GameRating.gameId = Game._id ";
+    private static final String NEWEST_FIRST = "ORDER BY release_epoch_day DESC, Game.id DESC";
+
+    private GameDatabase database;
+
+    @Before
+    public void createDatabase() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = Room.inMemoryDatabaseBuilder(context, GameDatabase.class).build();
+    }
+
+    @After
+    public void closeDatabase() {
+        database.close();
+    }
+
+    @Test
+    public void newestGames_areReadFromTheReleaseIndex() {
+        String plan = queryPlan(SUMMARIES + NEWEST_FIRST);
+
+        assertTrue(plan, plan.contains("index_Game_release_epoch_day"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void gamesReleasedBetween_searchTheReleaseIndex() {
+        String plan = queryPlan(SUMMARIES
+                + "WHERE release_epoch_day BETWEEN ? AND ? " + NEWEST_FIRST, 17_000, 17_500);
+
+        assertTrue(plan, plan.contains("SEARCH"));
+        assertTrue(plan, plan.contains("index_Game_release_epoch_day"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void newestGamesOfAGenre_searchTheGenreIndex() {
+        String plan = queryPlan(SUMMARIES + "WHERE genre = ? " + NEWEST_FIRST, "RPG");
+
+        assertTrue(plan, plan.contains("SEARCH"));
+        assertTrue(plan, plan.contains("index_Game_genre_release_epoch_day"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void topRatedGames_areReadFromTheRatingIndex() {
+        String plan = queryPlan("SELECT Game.id, Game._id, game_title, genre, image_hash, "
+                + "review_count, average_rating FROM GameRating "
+                + "INNER JOIN Game ON Game._id = GameRating.gameId "
+                + "ORDER BY average_rating DESC, GameRating.gameId DESC");
+
+        assertTrue(plan, plan.contains("index_GameRating_average_rating_gameId"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    /**
+     * @return detail column of each step of the query plan, one per line
+     */
+    private String queryPlan(String sql, Object... args) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = database.query("EXPLAIN QUERY PLAN " + sql, args)) {
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(cursor.getColumnCount() - 1)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,152 @@
+package com.ctse.androidgamereviewer.data;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.ctse.androidgamereviewer.data.images.ImageStore;
+import com.ctse.androidgamereviewer.data.retrofit.ApiClient;
+import com.ctse.androidgamereviewer.data.retrofit.GameWebService;
+import com.ctse.androidgamereviewer.data.sync.SyncStats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import androidx.room.Room;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs GameRepository.syncGames() end to end, against an in-memory database and a local
+ * stand-in for the web service. Unlike {@link DeltaSyncTest}, which runs the protocol on the
+ * JVM, it checks what a sync writes to the database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GameSyncTest {
+
+    private static final String GAMES = "["
+            + "{\"_id\":\"a\",\"title\":\"Game A\",\"genre\":\"RPG\",\"updatedAt\":3},"
+            + "{\"_id\":\"b\",\"title\":\"Game B\",\"genre\":\"FPS\",\"updatedAt\":7}]";
+
+    private MockWebServer server;
+    private GameDatabase database;
+    private GameRepository repository;
+    /**
+     * True to answer every request with every game, as a web service without delta sync would
+     */
+    private volatile boolean ignoreCursor;
+    /**
+     * Games the web service answers with
+     */
+    private volatile String games = GAMES;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String since = request.getRequestUrl().queryParameter("since");
+                if (ignoreCursor || since == null || Long.parseLong(since) < 7) {
+                    return new MockResponse().setBody(games);
+                }
+                return new MockResponse().setBody("[]");
+            }
+        });
+        server.start();
+
+        GameWebService webService = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(GsonConverterFactory.create(ApiClient.getGson()))
+                .build()
+                .create(GameWebService.class);
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = Room.inMemoryDatabaseBuilder(context, GameDatabase.class).build();
+        repository = new GameRepository(database, webService, ImageStore.getInstance(context));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        database.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void firstSync_writesEveryGameAndMovesTheCursor() throws Exception {
+        SyncStats stats = repository.syncGames();
+
+        assertEquals(2, stats.getWritten());
+        assertEquals(2, queryLong("SELECT COUNT(*) FROM Game"));
+        assertEquals(Long.valueOf(7), database.gameDAO().getSyncCursor());
+    }
+
+    @Test
+    public void unchangedSync_writesNoRows() throws Exception {
+        repository.syncGames();
+        long changesBefore = queryLong("SELECT total_changes()");
+
+        SyncStats stats = repository.syncGames();
+
+        assertEquals("7", lastRequestSince());
+        assertEquals(0, stats.getSeen());
+        assertEquals(0, queryLong("SELECT total_changes()") - changesBefore);
+        assertEquals(Long.valueOf(7), database.gameDAO().getSyncCursor());
+    }
+
+    @Test
+    public void resentUnchangedGames_writeNoRows() throws Exception {
+        repository.syncGames();
+        long changesBefore = queryLong("SELECT total_changes()");
+        ignoreCursor = true;
+
+        SyncStats stats = repository.syncGames();
+
+        assertEquals(2, stats.getSeen());
+        assertEquals(0, stats.getWritten());
+        assertEquals(0, queryLong("SELECT total_changes()") - changesBefore);
+        assertEquals(Long.valueOf(7), database.gameDAO().getSyncCursor());
+    }
+
+    @Test
+    public void gameTitledLikeAnotherGame_isNotWritten() throws Exception {
+        repository.syncGames();
+        ignoreCursor = true;
+        games = "[{\"_id\":\"c\",\"title\":\"Game A\",\"genre\":\"RTS\",\"updatedAt\":9}]";
+
+        SyncStats stats = repository.syncGames();
+
+        assertEquals(0, stats.getWritten());
+        assertEquals(2, queryLong("SELECT COUNT(*) FROM Game"));
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM Game WHERE _id = 'a' AND genre = 'RPG'"));
+    }
+
+    /**
+     * Runs a query which returns one number. total_changes() counts the rows inserted, updated
+     * or deleted on the single connection of the in-memory database since it was opened.
+     */
+    private long queryLong(String sql) {
+        try (Cursor cursor = database.query(sql, null)) {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        }
+    }
+
+    private String lastRequestSince() throws InterruptedException {
+        RecordedRequest request = null;
+        for (int i = server.getRequestCount(); i > 0; i--) {
+            request = server.takeRequest();
+        }
+        return request == null ? null : request.getRequestUrl().queryParameter("since");
+    }
+}
@@ -0,0 +1,143 @@
+package com.ctse.androidgamereviewer.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.ctse.androidgamereviewer.data.dao.ReviewDAO;
+import com.ctse.androidgamereviewer.data.entities.Review;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.room.Room;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how long loading the first page of reviews of one game takes while the total number
+ * of reviews grows. With the gameId indexes the lookup time should stay flat. The times are only
+ * logged, as wall clock times vary too much between devices and runs to assert on. The test
+ * asserts on the query plan instead: the page is read in order from index_Review_gameId_date,
+ * so a lookup reads one page of rows however many reviews there are.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReviewQueryBenchmark {
+
+    private static final String TAG = "ReviewQueryBenchmark";
+    private static final int GAMES = 500;
+    private static final int[] TOTAL_REVIEWS = {10_000, 40_000, 160_000};
+    private static final int LOOKUPS = 200;
+    private static final int PAGE_SIZE = 20;
+    private static final String FIRST_PAGE = "SELECT * FROM Review WHERE gameId = ? "
+            + "ORDER BY date DESC, id DESC LIMIT 20";
+
+    private GameDatabase database;
+    private ReviewDAO reviewDAO;
+
+    @Before
+    public void createDatabase() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = Room.inMemoryDatabaseBuilder(context, GameDatabase.class).build();
+        reviewDAO = database.reviewDAO();
+    }
+
+    @After
+    public void closeDatabase() {
+        database.close();
+    }
+
+    @Test
+    public void reviewsByGameId_useIndex() {
+        String plan = queryPlan();
+
+        Log.i(TAG, "query plan:\n" + plan);
+        assertReadsOnePage(plan);
+    }
+
+    @Test
+    public void reviewsByGameId_lookupTimeAgainstTotalReviews() {
+        int inserted = 0;
+        long firstAverage = 0;
+        long lastAverage = 0;
+
+        for (int total : TOTAL_REVIEWS) {
+            insertReviews(inserted, total);
+            inserted = total;
+
+            // Warm up the statement cache before measuring
+            reviewDAO.getReviewsByGameId("game-0", PAGE_SIZE);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                reviewDAO.getReviewsByGameId("game-" + (i % GAMES), PAGE_SIZE);
+            }
+            long average = (System.nanoTime() - start) / LOOKUPS;
+
+            Log.i(TAG, String.format("%d reviews: %d us per game lookup", total, average / 1000));
+            if (firstAverage == 0) {
+                firstAverage = average;
+            }
+            lastAverage = average;
+
+            // The plan may change as the table grows, each lookup must still read one page
+            assertReadsOnePage(queryPlan());
+        }
+
+        Log.i(TAG, String.format("lookup time grew %.2fx", (double) lastAverage / firstAverage));
+    }
+
+    /**
+     * Asserts that the first page is searched through index_Review_gameId_date and read in the
+     * order of the index. A scan would read every review, a sort every review of the game.
+     */
+    private static void assertReadsOnePage(String plan) {
+        assertTrue(plan, plan.contains("SEARCH"));
+        assertTrue(plan, plan.contains("index_Review_gameId_date"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    private String queryPlan() {
+        // Planner statistics of the current table size
+        database.getOpenHelper().getWritableDatabase().execSQL("ANALYZE");
+        Cursor cursor = database.query("EXPLAIN QUERY PLAN " + FIRST_PAGE,
+                new Object[]{"game-1"});
+        StringBuilder plan = new StringBuilder();
+        try {
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(cursor.getColumnCount() - 1)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+
+    private void insertReviews(int from, int to) {
+        List<Review> reviews = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Review review = new Review();
+            review.set_id("review-" + i);
+            review.setGameId("game-" + (i % GAMES));
+            review.setTitle("Review " + i);
+            review.setBody("Body of review " + i);
+            review.setDate(String.format("2019-%02d-%02d", 1 + i % 12, 1 + i % 28));
+            review.setRating(1 + i % 5);
+            reviews.add(review);
+
+            if (reviews.size() == 5_000) {
+                reviewDAO.insertMany(reviews);
+                reviews.clear();
+            }
+        }
+        reviewDAO.insertMany(reviews);
+    }
+}
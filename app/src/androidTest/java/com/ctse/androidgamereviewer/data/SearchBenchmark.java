@@ -0,0 +1,214 @@
+package com.ctse.androidgamereviewer.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import androidx.paging.DataSource;
+import androidx.paging.PagedList;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the latency of the first page of a full-text search over a synthetic catalogue of
+ * 100,000 games and 1,000,000 reviews, and compares it with the LIKE scan which finds the same
+ * rows without the index. The first page is what the list shows after the user stops typing.
+ * <p>
+ * The words of the synthetic text come from a small vocabulary, so each of them matches a large
+ * share of the rows. Every review body also holds a code shared by about ten reviews, which is
+ * searched as a selective query.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SearchBenchmark {
+
+    private static final String TAG = "SearchBenchmark";
+    private static final String DATABASE_NAME = "search_benchmark";
+    private static final int GAMES = 100_000;
+    private static final int REVIEWS = 1_000_000;
+    private static final int RUNS = 5;
+    private static final String[] WORDS = {"dragon", "quest", "shadow", "legend", "star",
+            "racer", "kingdom", "empire", "galaxy", "knight", "zombie", "puzzle", "ninja",
+            "pirate", "robot", "castle", "storm", "dungeon", "hero", "tactics", "ocean",
+            "forest", "frontier", "rogue", "arena", "saga", "odyssey", "chronicle", "rebellion",
+            "horizon"};
+    private static final String[] GENRES = {"Action", "Adventure", "Role-playing",
+            "Strategy", "Simulation", "Sports", "Puzzle", "Racing", "Shooter", "Platformer"};
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static Context context;
+    private static GameDatabase database;
+
+    @BeforeClass
+    public static void createCatalogue() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = Room.databaseBuilder(context, GameDatabase.class, DATABASE_NAME)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .build();
+
+        long start = System.nanoTime();
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        Random random = new Random(7);
+        db.beginTransaction();
+        try {
+            SupportSQLiteStatement game = db.compileStatement("INSERT INTO Game "
+                    + "(_id, game_title, genre, release_date, updated_at, content_hash) "
+                    + "VALUES (?, ?, ?, '2019-04-01', 0, 0)");
+            for (int i = 0; i < GAMES; i++) {
+                game.bindString(1, "game-" + i);
+                game.bindString(2, words(random, 2) + " " + i);
+                game.bindString(3, GENRES[random.nextInt(GENRES.length)]);
+                game.executeInsert();
+            }
+
+            SupportSQLiteStatement review = db.compileStatement("INSERT INTO Review "
+                    + "(remote_id, gameId, title, body, date, rating, content_hash) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, 0)");
+            for (int i = 0; i < REVIEWS; i++) {
+                review.bindString(1, "review-" + i);
+                review.bindString(2, "game-" + random.nextInt(GAMES));
+                review.bindString(3, words(random, 3));
+                review.bindString(4, words(random, 30) + " code" + random.nextInt(REVIEWS / 10));
+                review.bindString(5, String.format("2019-%02d-%02d",
+                        1 + random.nextInt(12), 1 + random.nextInt(28)));
+                review.bindLong(6, 1 + random.nextInt(5));
+                review.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.i(TAG, "catalogue written in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    @AfterClass
+    public static void deleteCatalogue() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void gameSearch_firstPage() {
+        for (String text : new String[]{"d", "dragon", "dragon que", "4242", "racing"}) {
+            SearchQuery query = SearchQuery.parse(text);
+            long fts = median(new Search() {
+                @Override
+                public int run(SearchQuery query) {
+                    return firstPage(database.gameDAO().searchGameSummaries(query.getMatch(),
+                            query.getPrefixPattern(), query.getContainsPattern()));
+                }
+            }, query);
+            Log.i(TAG, String.format("games \"%s\": %d ms", text, fts));
+        }
+    }
+
+    @Test
+    public void reviewSearch_firstPageBeatsLikeScan() {
+        for (String text : new String[]{"code4242", "ninja", "ninja pirate", "odyss"}) {
+            SearchQuery query = SearchQuery.parse(text);
+            long fts = median(new Search() {
+                @Override
+                public int run(SearchQuery query) {
+                    return firstPage(database.reviewDAO().searchReviews(query.getMatch(),
+                            query.getPrefixPattern()));
+                }
+            }, query);
+            long like = median(new Search() {
+                @Override
+                public int run(SearchQuery query) {
+                    return likeScan(query);
+                }
+            }, query);
+            Log.i(TAG, String.format("reviews \"%s\": %d ms, LIKE scan %d ms", text, fts, like));
+            if (text.startsWith("code")) {
+                assertTrue(text + ": " + fts + " ms vs " + like + " ms", fts < like);
+            }
+        }
+    }
+
+    private interface Search {
+
+        /**
+         * @return number of rows found
+         */
+        int run(SearchQuery query);
+    }
+
+    /**
+     * @return median time in milliseconds of the search over {@link #RUNS} runs
+     */
+    private static long median(Search search, SearchQuery query) {
+        long[] millis = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            int found = search.run(query);
+            millis[i] = (System.nanoTime() - start) / 1_000_000;
+            assertFalse(query + " found nothing", found == 0);
+        }
+        Arrays.sort(millis);
+        return millis[RUNS / 2];
+    }
+
+    /**
+     * Loads the first page of a search the way the list does, on the calling thread
+     */
+    private static <T> int firstPage(DataSource.Factory<Integer, T> factory) {
+        PagedList<T> page = new PagedList.Builder<>(factory.create(), 20)
+                .setFetchExecutor(DIRECT)
+                .setNotifyExecutor(DIRECT)
+                .build();
+        return page.size();
+    }
+
+    /**
+     * Finds the first page of the same reviews without the index
+     */
+    private static int likeScan(SearchQuery query) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM Review WHERE 1");
+        String[] words = query.toString().split(" ");
+        Object[] args = new Object[words.length * 2];
+        for (int i = 0; i < words.length; i++) {
+            sql.append(" AND (title LIKE ? OR body LIKE ?)");
+            args[2 * i] = "%" + words[i] + "%";
+            args[2 * i + 1] = "%" + words[i] + "%";
+        }
+        sql.append(" ORDER BY date DESC, id DESC LIMIT 20");
+
+        Cursor cursor = database.getOpenHelper().getReadableDatabase()
+                .query(sql.toString(), args);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,179 @@
+package com.ctse.androidgamereviewer.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.ctse.androidgamereviewer.data.dao.GameDAO;
+import com.ctse.androidgamereviewer.data.entities.Game;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares a sync written with the upsert of GameDAO against the REPLACE insert it replaced.
+ * Both sync the same games a second time with a tenth of them changed. Write amplification is
+ * measured as the bytes appended to the write-ahead log, and id churn as the number of games
+ * which end up with a new local id.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UpsertBenchmark {
+
+    private static final String TAG = "UpsertBenchmark";
+    private static final String DATABASE_NAME = "upsert_benchmark";
+    private static final int GAMES = 5_000;
+    private static final int BATCH_SIZE = 200;
+
+    private Context context;
+    private GameDatabase database;
+
+    @Before
+    public void createDatabase() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = Room.databaseBuilder(context, GameDatabase.class, DATABASE_NAME)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .build();
+    }
+
+    @After
+    public void closeDatabase() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void upsert_writesLessThanReplace() {
+        Result replace = sync(false);
+
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+        createDatabase();
+        Result upsert = sync(true);
+
+        Log.i(TAG, "REPLACE: " + replace);
+        Log.i(TAG, "upsert:  " + upsert);
+        Log.i(TAG, String.format("upsert wrote %.2fx the WAL bytes in %.2fx the time",
+                (double) upsert.walBytes / replace.walBytes,
+                (double) upsert.nanos / replace.nanos));
+
+        assertEquals(GAMES, replace.newIds);
+        assertEquals(0, upsert.newIds);
+        assertTrue("upsert wrote more than REPLACE", upsert.walBytes < replace.walBytes);
+    }
+
+    /**
+     * Inserts every game, then measures syncing them again with a tenth of them changed.
+     */
+    private Result sync(boolean upsert) {
+        GameDAO gameDAO = database.gameDAO();
+        gameDAO.insertMany(createGames(false));
+
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        query(db, "PRAGMA wal_autocheckpoint = 0");
+        query(db, "PRAGMA wal_checkpoint(TRUNCATE)");
+        long maxId = queryLong(db, "SELECT MAX(id) FROM Game");
+
+        List<Game> games = createGames(true);
+        long start = System.nanoTime();
+        for (int i = 0; i < games.size(); i += BATCH_SIZE) {
+            List<Game> batch = games.subList(i, Math.min(i + BATCH_SIZE, games.size()));
+            if (upsert) {
+                gameDAO.insertMany(batch);
+            } else {
+                replace(db, batch);
+            }
+        }
+
+        Result result = new Result();
+        result.nanos = System.nanoTime() - start;
+        result.walBytes = new File(db.getPath() + "-wal").length();
+        result.newIds = queryLong(db, "SELECT COUNT(*) FROM Game WHERE id > " + maxId);
+        return result;
+    }
+
+    /**
+     * The REPLACE insert GameDAO used before the upsert
+     */
+    private static void replace(SupportSQLiteDatabase db, List<Game> games) {
+        SupportSQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO Game "
+                + "(_id, game_title, genre, image_hash, release_date, updated_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (Game game : games) {
+                statement.bindString(1, game.get_id());
+                statement.bindString(2, game.getTitle());
+                statement.bindString(3, game.getGenre());
+                statement.bindNull(4);
+                statement.bindString(5, game.getRelease_date());
+                statement.bindLong(6, game.getUpdatedAt());
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static List<Game> createGames(boolean changed) {
+        List<Game> games = new ArrayList<>(GAMES);
+        for (int i = 0; i < GAMES; i++) {
+            Game game = new Game();
+            game.set_id("game-" + i);
+            game.setTitle("Game " + i);
+            game.setGenre(changed && i % 10 == 0 ? "Changed genre" : "Genre " + (i % 7));
+            game.setRelease_date("2019-04-01");
+            game.setUpdatedAt(changed ? GAMES + i : i);
+            games.add(game);
+        }
+        return games;
+    }
+
+    private static void query(SupportSQLiteDatabase db, String sql) {
+        Cursor cursor = db.query(sql);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long queryLong(SupportSQLiteDatabase db, String sql) {
+        Cursor cursor = db.query(sql);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static class Result {
+
+        private long nanos;
+        private long walBytes;
+        private long newIds;
+
+        @Override
+        public String toString() {
+            return String.format("%d ms, %d WAL bytes, %d new local ids",
+                    nanos / 1_000_000, walBytes, newIds);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.ctse.androidgamereviewer.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.ctse.androidgamereviewer.data.entities.Review;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares bursts of review inserts committed one transaction per write against the same
+ * bursts committed through WriteBehindBuffer. Reports the throughput of both and the number of
+ * times the Review table was invalidated.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WriteBehindBenchmark {
+
+    private static final String TAG = "WriteBehindBenchmark";
+    private static final String DATABASE_NAME = "write_behind_benchmark";
+    private static final int BURSTS = 20;
+    private static final int BURST_SIZE = 50;
+    private static final long PAUSE_MILLIS = 20;
+
+    private Context context;
+    private GameDatabase database;
+    private ExecutorService writer;
+    private ScheduledExecutorService timer;
+
+    @Before
+    public void createDatabase() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = Room.databaseBuilder(context, GameDatabase.class, DATABASE_NAME)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .build();
+        writer = Executors.newSingleThreadExecutor();
+        timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void closeDatabase() {
+        writer.shutdownNow();
+        timer.shutdownNow();
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void burstyWrites_areFasterThroughTheBuffer() throws Exception {
+        AtomicInteger invalidations = observeReviews();
+        long direct = insertBursts(false);
+        // Invalidations are delivered in the background after the commit
+        Thread.sleep(500);
+        int directInvalidations = invalidations.getAndSet(0);
+
+        long buffered = insertBursts(true);
+        Thread.sleep(500);
+        int bufferedInvalidations = invalidations.get();
+
+        int writes = BURSTS * BURST_SIZE;
+        Log.i(TAG, String.format("one transaction per write: %.0f writes/s, %d invalidations",
+                writes * 1e9 / direct, directInvalidations));
+        Log.i(TAG, String.format("write-behind buffer:       %.0f writes/s, %d invalidations",
+                writes * 1e9 / buffered, bufferedInvalidations));
+
+        assertTrue("Buffered writes were slower", buffered < direct);
+    }
+
+    /**
+     * Inserts the bursts with a pause between them, and waits until every write is committed.
+     *
+     * @return nanoseconds spent committing, without the pauses
+     */
+    private long insertBursts(boolean buffered) throws Exception {
+        WriteBehindBuffer buffer = new WriteBehindBuffer(
+                new WriteBehindBuffer.TransactionRunner() {
+                    @Override
+                    public void runInTransaction(Runnable body) {
+                        database.runInTransaction(body);
+                    }
+                }, writer, new WriteBehindBuffer.Scheduler() {
+                    @Override
+                    public void schedule(Runnable task, long delayMillis) {
+                        timer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+                    }
+                }, WriteBehindBuffer.WINDOW_MILLIS, WriteBehindBuffer.MAX_WRITES,
+                WriteBehindBuffer.ANDROID_LOG);
+
+        long nanos = 0;
+        for (int burst = 0; burst < BURSTS; burst++) {
+            long start = System.nanoTime();
+            Future<?> last = null;
+            for (int i = 0; i < BURST_SIZE; i++) {
+                final Review review = createReview(buffered, burst * BURST_SIZE + i);
+                if (buffered) {
+                    last = buffer.submit(new WriteBehindBuffer.Write() {
+                        @Override
+                        protected void apply() {
+                            database.reviewDAO().insertReview(review);
+                        }
+                    });
+                } else {
+                    last = writer.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            database.reviewDAO().insertReview(review);
+                        }
+                    });
+                }
+            }
+            if (buffered) {
+                buffer.flush();
+            } else {
+                last.get();
+            }
+            nanos += System.nanoTime() - start;
+            Thread.sleep(PAUSE_MILLIS);
+        }
+        return nanos;
+    }
+
+    private AtomicInteger observeReviews() {
+        final AtomicInteger invalidations = new AtomicInteger();
+        database.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("Review") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidations.incrementAndGet();
+            }
+        });
+        return invalidations;
+    }
+
+    private static Review createReview(boolean buffered, int i) {
+        Review review = new Review();
+        review.set_id((buffered ? "buffered-" : "direct-") + i);
+        review.setGameId("game-" + (i % 10));
+        review.setTitle("Review " + i);
+        review.setBody("Body of review " + i);
+        review.setDate("2019-04-01");
+        review.setRating(i % 5 + 1);
+        return review;
+    }
+}
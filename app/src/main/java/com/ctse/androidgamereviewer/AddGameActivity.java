@@ -3,10 +3,8 @@ package com.ctse.androidgamereviewer;
 import android.app.Activity;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.Bundle;
-import android.util.Base64;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -20,16 +18,22 @@ import com.tsongkha.spinnerdatepicker.DatePicker;
 import com.tsongkha.spinnerdatepicker.DatePickerDialog;
 import com.tsongkha.spinnerdatepicker.SpinnerDatePickerDialogBuilder;
 
-import java.io.ByteArrayOutputStream;
-
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProviders;
 
 /**
  * AddGameActivity is launched from the MainActivity when the floating action button is clicked.
  * It consists of a form to enter information about the game and pass it back as a result to the
  * Main activity where it can be persisted.
  * <p>
+ * The picked image is decoded off the UI thread, sampled straight from its content URI and
+ * bounded to R.integer.cover_max_dimension. On save it is compressed straight into the
+ * ImageStore on a background thread and only its hash is passed back to the MainActivity.
+ * Both run in the {@link AddGameViewModel}, so their results reach the activity even if it was
+ * recreated meanwhile, and the URI of the picked image is kept in the saved instance state.
+ * <p>
  * A custom DatePicker library was used since the DatePicker in newer versions of android
  * cannot use a Spinner style. See the <a href="https://github.com/drawers/SpinnerDatePicker">
  * Spinner date picker github page</a>
@@ -40,14 +44,16 @@ public class AddGameActivity extends AppCompatActivity implements
     public static final String EXTRA_TITLE = "com.ctse.androidgamereviewer.EXTRA_TITLE";
     public static final String EXTRA_DESCRIPTION = "com.ctse.androidgamereviewer.EXTRA_DESCRIPTION";
     public static final String EXTRA_RELEASE_DATE = "com.ctse.androidgamereviewer.EXTRA_RELEASE_DATE";
-    public static final String EXTRA_IMAGE = "com.ctse.androidgamereviewer.EXTRA_IMAGE";
+    public static final String EXTRA_IMAGE_HASH = "com.ctse.androidgamereviewer.EXTRA_IMAGE_HASH";
     public static final int GALLERY_REQUEST_CODE = 12;
+    private static final String STATE_IMAGE_URI = "image_uri";
 
     private EditText etTitle;
     private EditText etGenre;
     private EditText etDate;
     private ImageView imageView;
     private ImageButton imageButton;
+    private AddGameViewModel viewModel;
 
     DatePickerDialog datePickerDialog;
 
@@ -89,10 +95,50 @@ public class AddGameActivity extends AppCompatActivity implements
             }
         });
 
+        viewModel = ViewModelProviders.of(this).get(AddGameViewModel.class);
+        if (savedInstanceState != null && viewModel.getImageUri() == null) {
+            // The process was killed, decode the picked image again
+            Uri imageUri = savedInstanceState.getParcelable(STATE_IMAGE_URI);
+            if (imageUri != null) {
+                viewModel.selectImage(imageUri, getCoverMaxDimension());
+            }
+        }
+        viewModel.getImage().observe(this, new Observer<Bitmap>() {
+            @Override
+            public void onChanged(Bitmap bitmap) {
+                if (bitmap != null) {
+                    imageView.setImageBitmap(bitmap);
+                }
+            }
+        });
+        viewModel.getStoredImageHash().observe(this, new Observer<String>() {
+            @Override
+            public void onChanged(String imageHash) {
+                if (imageHash != null) {
+                    onImageStored(imageHash);
+                }
+            }
+        });
+        viewModel.getError().observe(this, new Observer<String>() {
+            @Override
+            public void onChanged(String error) {
+                if (error != null) {
+                    Toast.makeText(AddGameActivity.this, error, Toast.LENGTH_SHORT).show();
+                    viewModel.onErrorShown();
+                }
+            }
+        });
+
         getSupportActionBar().setHomeAsUpIndicator(R.drawable.ic_close);
         setTitle("Add Game");
     }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(STATE_IMAGE_URI, viewModel.getImageUri());
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater menuInflater = getMenuInflater();
@@ -124,23 +170,14 @@ public class AddGameActivity extends AppCompatActivity implements
             switch (requestCode) {
                 case GALLERY_REQUEST_CODE:
                     //data.getData returns the content URI for the selected Image
-                    Uri selectedImage = data.getData();
-                    imageView.setImageURI(selectedImage);
+                    Uri selectedImageUri = data.getData();
+                    viewModel.selectImage(selectedImageUri, getCoverMaxDimension());
                     break;
             }
     }
 
-    /**
-     * Helper method to encode Bitmap image as a Base64 String.
-     * @param drawable Image to be encoded.
-     * @return Base64 encoded image.
-     */
-    private String getBase64Image(BitmapDrawable drawable) {
-        Bitmap bitmap = drawable.getBitmap();
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 90, bos);
-        byte[] bb = bos.toByteArray();
-        return Base64.encodeToString(bb, Base64.NO_WRAP);
+    private int getCoverMaxDimension() {
+        return getResources().getInteger(R.integer.cover_max_dimension);
     }
 
 
@@ -169,6 +206,27 @@ public class AddGameActivity extends AppCompatActivity implements
      * persisted.
      */
     private void saveGame() {
+        Intent saveGameIntent = createResult();
+        if (saveGameIntent == null) {
+            return;
+        }
+
+        if (viewModel.getImage().getValue() == null) {
+            setResult(RESULT_OK, saveGameIntent);
+            finish();
+            return;
+        }
+
+        // The result is set once the image is in the image store
+        viewModel.storeImage();
+    }
+
+    /**
+     * Reads the form into the result intent.
+     *
+     * @return result holding the form data, or null if a value is missing
+     */
+    private Intent createResult() {
         String title = etTitle.getText().toString().trim();
         String description = etGenre.getText().toString().trim();
         String releaseDate = etDate.getText().toString().trim();
@@ -176,23 +234,35 @@ public class AddGameActivity extends AppCompatActivity implements
         if (title.isEmpty() || description.isEmpty()) {
             Toast.makeText(this, "Please insert Title and Description",
                     Toast.LENGTH_SHORT).show();
-            return;
+            return null;
         } else if (releaseDate.isEmpty()) {
             Toast.makeText(this, "Please specify the release date",
                     Toast.LENGTH_SHORT).show();
-            return;
+            return null;
         }
 
         Intent saveGameIntent = new Intent();
         saveGameIntent.putExtra(EXTRA_TITLE, title);
         saveGameIntent.putExtra(EXTRA_DESCRIPTION, description);
         saveGameIntent.putExtra(EXTRA_RELEASE_DATE, releaseDate);
-        saveGameIntent.putExtra(EXTRA_IMAGE, getBase64Image(
-                (BitmapDrawable) imageView.getDrawable()));
+        return saveGameIntent;
+    }
+
+    /**
+     * Called once the image has been written to the image store in the background. The form is
+     * read again, as the activity may have been recreated since the game was saved.
+     *
+     * @param imageHash reference of the stored image
+     */
+    private void onImageStored(String imageHash) {
+        Intent saveGameIntent = createResult();
+        if (saveGameIntent == null) {
+            return;
+        }
 
+        saveGameIntent.putExtra(EXTRA_IMAGE_HASH, imageHash);
         setResult(RESULT_OK, saveGameIntent);
         finish();
-
     }
 
     /**
@@ -246,6 +316,4 @@ public class AddGameActivity extends AppCompatActivity implements
 
         return date;
     }
-
-
 }
@@ -0,0 +1,183 @@
+package com.ctse.androidgamereviewer;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.ctse.androidgamereviewer.data.images.ImageLoader;
+import com.ctse.androidgamereviewer.data.images.ImageStore;
+
+import java.io.IOException;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+/**
+ * Holds the cover picked in the AddGameActivity and runs its decode and store in the
+ * background. The results are delivered through LiveData, so they reach the activity which is
+ * showing when they complete, including one recreated after a configuration change, instead of
+ * the activity which started the work.
+ * <p>
+ * Only the content URI of the picked image survives the process being killed, the activity
+ * saves it and decodes it again through {@link #selectImage(Uri, int)}.
+ */
+public class AddGameViewModel extends AndroidViewModel {
+
+    private final MutableLiveData<Bitmap> image = new MutableLiveData<>();
+    private final MutableLiveData<String> storedImageHash = new MutableLiveData<>();
+    private final MutableLiveData<String> error = new MutableLiveData<>();
+    private Uri imageUri;
+    private boolean saving;
+
+    public AddGameViewModel(@NonNull Application application) {
+        super(application);
+    }
+
+    /**
+     * Decodes the picked image in the background, bounded to a maximum size. The decoded image
+     * is published through {@link #getImage()}, unless another image was picked meanwhile.
+     */
+    public void selectImage(Uri uri, int maxDimension) {
+        imageUri = uri;
+        new DecodeImageAsyncTask(this, getApplication().getContentResolver(), uri, maxDimension)
+                .execute();
+    }
+
+    /**
+     * Compresses the picked image into the image store in the background. Its hash is published
+     * through {@link #getStoredImageHash()}.
+     *
+     * @return false if the image is already being stored
+     */
+    public boolean storeImage() {
+        if (saving) {
+            return false;
+        }
+        saving = true;
+        new StoreImageAsyncTask(this, ImageStore.getInstance(getApplication()))
+                .execute(image.getValue());
+        return true;
+    }
+
+    /**
+     * @return content URI of the picked image, or null if none was picked
+     */
+    public Uri getImageUri() {
+        return imageUri;
+    }
+
+    /**
+     * @return picked image once it is decoded, null until then
+     */
+    public LiveData<Bitmap> getImage() {
+        return image;
+    }
+
+    /**
+     * @return hash of the picked image once it is in the image store
+     */
+    public LiveData<String> getStoredImageHash() {
+        return storedImageHash;
+    }
+
+    /**
+     * @return message of the last failure which was not shown yet, null if there is none
+     */
+    public LiveData<String> getError() {
+        return error;
+    }
+
+    public void onErrorShown() {
+        error.setValue(null);
+    }
+
+    private void onImageDecoded(Uri uri, Bitmap bitmap) {
+        if (!uri.equals(imageUri)) {
+            // Another image was picked while this one was decoded
+            return;
+        }
+        if (bitmap == null) {
+            imageUri = null;
+            error.setValue("Image could not be loaded");
+            return;
+        }
+        image.setValue(bitmap);
+    }
+
+    private void onImageStored(String imageHash) {
+        saving = false;
+        if (imageHash == null) {
+            error.setValue("Image could not be saved");
+            return;
+        }
+        storedImageHash.setValue(imageHash);
+    }
+
+    /**
+     * Decodes the picked image from its content URI, bounded to a maximum size.
+     */
+    private static class DecodeImageAsyncTask extends AsyncTask<Void, Void, Bitmap> {
+
+        private AddGameViewModel viewModel;
+        private ContentResolver contentResolver;
+        private Uri uri;
+        private int maxDimension;
+
+        private DecodeImageAsyncTask(AddGameViewModel viewModel, ContentResolver contentResolver,
+                                     Uri uri, int maxDimension) {
+            this.viewModel = viewModel;
+            this.contentResolver = contentResolver;
+            this.uri = uri;
+            this.maxDimension = maxDimension;
+        }
+
+        @Override
+        protected Bitmap doInBackground(Void... voids) {
+            try {
+                return ImageLoader.decode(contentResolver, uri, maxDimension);
+            } catch (IOException | SecurityException e) {
+                Log.d("AddGameViewModel", "Image could not be decoded", e);
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Bitmap bitmap) {
+            viewModel.onImageDecoded(uri, bitmap);
+        }
+    }
+
+    /**
+     * Compresses the picked image straight into the image store.
+     */
+    private static class StoreImageAsyncTask extends AsyncTask<Bitmap, Void, String> {
+
+        private AddGameViewModel viewModel;
+        private ImageStore imageStore;
+
+        private StoreImageAsyncTask(AddGameViewModel viewModel, ImageStore imageStore) {
+            this.viewModel = viewModel;
+            this.imageStore = imageStore;
+        }
+
+        @Override
+        protected String doInBackground(Bitmap... bitmaps) {
+            try {
+                return imageStore.put(bitmaps[0]);
+            } catch (IOException e) {
+                Log.d("AddGameViewModel", "Image could not be stored", e);
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(String imageHash) {
+            viewModel.onImageStored(imageHash);
+        }
+    }
+}
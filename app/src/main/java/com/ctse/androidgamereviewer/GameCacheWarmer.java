@@ -0,0 +1,85 @@
+package com.ctse.androidgamereviewer;
+
+import com.ctse.androidgamereviewer.data.entities.GameSummary;
+import com.ctse.androidgamereviewer.data.entities.Review;
+import com.ctse.androidgamereviewer.data.images.ImageLoader;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.paging.PagedList;
+
+/**
+ * Warms the caches ViewGameDetailsActivity reads when it opens a game: the first page of the
+ * reviews of the game, kept by the ReviewRepository, and its decoded thumbnail, which the detail
+ * screen shows until its larger cover is decoded.
+ *
+ * @see ViewportPrefetcher
+ */
+class GameCacheWarmer implements ViewportPrefetcher.Loader {
+
+    private final ReviewViewModel reviewViewModel;
+    private final ImageLoader imageLoader;
+    private final int thumbnailSize;
+
+    /**
+     * @param thumbnailSize width and height of the thumbnails in pixels
+     */
+    GameCacheWarmer(ReviewViewModel reviewViewModel, ImageLoader imageLoader, int thumbnailSize) {
+        this.reviewViewModel = reviewViewModel;
+        this.imageLoader = imageLoader;
+        this.thumbnailSize = thumbnailSize;
+    }
+
+    @Override
+    public ViewportPrefetcher.Cancellable start(GameSummary game, final Runnable done) {
+        // The game is warm once both its thumbnail and its reviews are
+        final Runnable partDone = new Runnable() {
+
+            private int remaining = 2;
+
+            @Override
+            public void run() {
+                if (--remaining == 0) {
+                    done.run();
+                }
+            }
+        };
+
+        final Future<?> thumbnail = imageLoader.prefetch(game.get_id(), game.getImageHash(),
+                thumbnailSize, thumbnailSize, partDone);
+
+        // The paged list loads its first page as soon as it is observed, and keeps it once
+        // the observer is removed
+        final LiveData<PagedList<Review>> reviews =
+                reviewViewModel.getReviewForGame(game.get_id());
+        final Observer<PagedList<Review>> observer = new Observer<PagedList<Review>>() {
+            @Override
+            public void onChanged(PagedList<Review> list) {
+                if (list != null) {
+                    reviews.removeObserver(this);
+                    partDone.run();
+                }
+            }
+        };
+        try {
+            reviews.observeForever(observer);
+        } catch (RejectedExecutionException e) {
+            // The read lane is full, the detail screen loads the reviews itself
+            reviews.removeObserver(observer);
+            partDone.run();
+        }
+
+        return new ViewportPrefetcher.Cancellable() {
+            @Override
+            public void cancel() {
+                if (thumbnail != null) {
+                    thumbnail.cancel(false);
+                }
+                reviews.removeObserver(observer);
+            }
+        };
+    }
+}
@@ -5,35 +5,86 @@ import android.content.Intent;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.ctse.androidgamereviewer.data.entities.Game;
+import com.ctse.androidgamereviewer.data.entities.GameSummary;
+import com.ctse.androidgamereviewer.data.images.ImageLoader;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Locale;
 
 import androidx.annotation.NonNull;
+import androidx.core.util.ObjectsCompat;
+import androidx.paging.PagedListAdapter;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 /**
  * To feed all game data to the list in the MainActivity. This object creates views for items,
  * and replaces the content of some of the views with new items when the original item is no longer
  * visible. It is a controller for the RecyclerView.
+ * <p>
+ * Games are supplied as a PagedList, so only the pages near the visible items are loaded.
+ * Items which are not loaded yet are null placeholders and are bound as empty rows.
+ * New lists are diffed on a background thread and items have stable ids derived from their
+ * remote _id, so only the rows which actually changed are rebound.
  *
  * <a href="https://developer.android.com/guide/topics/ui/layout/recyclerview"> Documentation</a>
  *
  * @see androidx.recyclerview.widget.RecyclerView.Adapter
+ * @see PagedListAdapter
  */
-public class GameViewAdapter extends RecyclerView.Adapter<GameViewAdapter.GameHolder> {
+public class GameViewAdapter extends PagedListAdapter<GameSummary, GameViewAdapter.GameHolder> {
 
-    private List<Game> games = new ArrayList<>();
     private Context mContext;
+    private ImageLoader imageLoader;
+    private ViewportPrefetcher prefetcher;
 
-    public static final String EXTRA_POSITION = "com.ctse.androidgamereviewer.POSITION";
     public static final String EXTRA_GAME_ID = "com.ctse.androidgamereviewer.GAME_ID";
 
+    /**
+     * Used by the PagedListAdapter to work out which rows changed between two lists.
+     * Items are matched on their remote _id and only the displayed columns are compared, so a
+     * sync which rewrites a row without changing what is shown does not rebind it.
+     */
+    static final DiffUtil.ItemCallback<GameSummary> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<GameSummary>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull GameSummary oldItem,
+                                               @NonNull GameSummary newItem) {
+                    return ObjectsCompat.equals(oldItem.get_id(), newItem.get_id());
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull GameSummary oldItem,
+                                                  @NonNull GameSummary newItem) {
+                    return ObjectsCompat.equals(oldItem.getTitle(), newItem.getTitle())
+                            && ObjectsCompat.equals(oldItem.getGenre(), newItem.getGenre())
+                            && ObjectsCompat.equals(oldItem.getImageHash(),
+                            newItem.getImageHash())
+                            && oldItem.getReviewCount() == newItem.getReviewCount()
+                            && oldItem.getAverageRating() == newItem.getAverageRating();
+                }
+            };
+
     public GameViewAdapter(Context mContext) {
+        super(DIFF_CALLBACK);
         this.mContext = mContext;
+        this.imageLoader = ImageLoader.getInstance(mContext);
+        setHasStableIds(true);
+    }
+
+    /**
+     * @param prefetcher told about every game which is opened, may be null
+     */
+    public void setViewportPrefetcher(ViewportPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        GameSummary game = getItem(position);
+        return game == null ? RecyclerView.NO_ID : StableIds.of(game.get_id());
     }
 
     @NonNull
@@ -46,40 +97,58 @@ public class GameViewAdapter extends RecyclerView.Adapter<GameViewAdapter.GameHo
 
     @Override
     public void onBindViewHolder(@NonNull GameHolder holder, final int position) {
-        final Game currentGame = games.get(position);
+        final GameSummary currentGame = getItem(position);
+
+        // Placeholder for a game which is not loaded yet
+        if (currentGame == null) {
+            holder.tvTitle.setText(null);
+            holder.tvDescription.setText(null);
+            holder.tvRating.setText(null);
+            imageLoader.cancel(holder.ivThumbnail);
+            holder.ivThumbnail.setImageDrawable(null);
+            holder.itemView.setOnClickListener(null);
+            return;
+        }
+
         holder.tvTitle.setText(currentGame.getTitle());
         holder.tvDescription.setText(currentGame.getGenre());
+        if (currentGame.getReviewCount() > 0) {
+            holder.tvRating.setText(String.format(Locale.getDefault(), "%.1f/5 (%d)",
+                    currentGame.getAverageRating(), currentGame.getReviewCount()));
+        } else {
+            holder.tvRating.setText(null);
+        }
+        if (currentGame.getImageHash() == null) {
+            holder.ivThumbnail.setImageDrawable(null);
+        }
+        imageLoader.load(holder.ivThumbnail, currentGame.get_id(), currentGame.getImageHash());
 
         holder.itemView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                if (prefetcher != null) {
+                    prefetcher.onGameOpened(currentGame.get_id());
+                }
                 Intent intent = new Intent(mContext, ViewGameDetailsActivity.class);
-                intent.putExtra(EXTRA_POSITION, position);
                 intent.putExtra(EXTRA_GAME_ID, currentGame.get_id());
                 mContext.startActivity(intent);
             }
         });
     }
 
-    @Override
-    public int getItemCount() {
-        return games.size();
-    }
-
-    void setGames(List<Game> games) {
-        this.games = games;
-        notifyDataSetChanged();
-    }
-
     /**
      *  Provides a reference class for each individual item in the list.
      */
     class GameHolder extends RecyclerView.ViewHolder {
         private TextView tvTitle;
         private TextView tvDescription;
+        private TextView tvRating;
+        private ImageView ivThumbnail;
 
         public GameHolder(@NonNull View itemView) {
             super(itemView);
+            ivThumbnail = itemView.findViewById(R.id.image_view_game_thumbnail);
+            tvRating = itemView.findViewById(R.id.text_view_game_rating);
             tvTitle = itemView.findViewById(R.id.text_view_game_title);
             tvDescription = itemView.findViewById(R.id.text_view_genre);
         }
@@ -1,15 +1,22 @@
 package com.ctse.androidgamereviewer;
 
 import android.app.Application;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
 
 import com.ctse.androidgamereviewer.data.GameRepository;
+import com.ctse.androidgamereviewer.data.SearchQuery;
 import com.ctse.androidgamereviewer.data.entities.Game;
-
-import java.util.List;
+import com.ctse.androidgamereviewer.data.entities.GameSummary;
 
 import androidx.annotation.NonNull;
+import androidx.arch.core.util.Function;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
+import androidx.paging.PagedList;
 
 /**
  * Abstracts Data handling logic out of the MainActivity UI controller.
@@ -20,13 +27,51 @@ import androidx.lifecycle.LiveData;
  */
 public class GameViewModel extends AndroidViewModel {
 
+    /**
+     * Time the search text has to stay unchanged before it is searched, so typing a word runs
+     * one search instead of one per letter
+     */
+    static final long SEARCH_DEBOUNCE_MILLIS = 300;
+
     private GameRepository gameRepository;
-    private LiveData<List<Game>> allGames;
+    private LiveData<PagedList<GameSummary>> gameSummaries;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final MutableLiveData<SearchQuery> searchQuery = new MutableLiveData<>();
+    private LiveData<PagedList<GameSummary>> listedGames;
+    private LiveData<PagedList<GameSummary>> searchResults;
+    private String typedSearch;
+
+    private final Runnable applySearch = new Runnable() {
+        @Override
+        public void run() {
+            SearchQuery query = SearchQuery.parse(typedSearch);
+            SearchQuery current = searchQuery.getValue();
+            if (current == null || !current.toString().equals(query.toString())) {
+                searchQuery.setValue(query);
+            }
+        }
+    };
 
     public GameViewModel(@NonNull Application application) {
         super(application);
-        gameRepository = new GameRepository(application);
-        allGames = gameRepository.getAllGames();
+        gameRepository = GameRepository.getInstance(application);
+        final PagedList.Config config = getPagingConfig(application);
+        gameSummaries = gameRepository.getGameSummaries(config);
+
+        searchQuery.setValue(SearchQuery.parse(null));
+        listedGames = Transformations.switchMap(searchQuery,
+                new Function<SearchQuery, LiveData<PagedList<GameSummary>>>() {
+                    @Override
+                    public LiveData<PagedList<GameSummary>> apply(SearchQuery query) {
+                        cancelSearch();
+                        if (query.isEmpty()) {
+                            return gameSummaries;
+                        }
+                        searchResults = gameRepository.searchGameSummaries(query, config);
+                        return searchResults;
+                    }
+                });
     }
 
     public void insert(Game game) {
@@ -41,8 +86,76 @@ public class GameViewModel extends AndroidViewModel {
         gameRepository.delete(game);
     }
 
-    public LiveData<List<Game>> getAllGames() {
-        return allGames;
+    /**
+     * @param remoteId remote _id of the game
+     * @return Observable game, null while no game has the id
+     */
+    public LiveData<Game> getGame(String remoteId) {
+        return gameRepository.getGameByRemoteId(remoteId);
+    }
+
+    public LiveData<PagedList<GameSummary>> getGameSummaries() {
+        return gameSummaries;
+    }
+
+    /**
+     * @return Observable paged list of the games matching the search, or of every game while
+     * nothing is searched
+     */
+    public LiveData<PagedList<GameSummary>> getListedGames() {
+        return listedGames;
+    }
+
+    /**
+     * Searches the games once the text stopped changing for {@link #SEARCH_DEBOUNCE_MILLIS}.
+     * Must be called on the main thread.
+     *
+     * @param text search as typed, empty to list every game
+     */
+    public void search(String text) {
+        typedSearch = text;
+        handler.removeCallbacks(applySearch);
+        handler.postDelayed(applySearch, SEARCH_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Stops loading pages of the search which is replaced, its results are no longer shown.
+     * The list is detached rather than its data source invalidated: the search is still observed
+     * by switchMap at this point, and an invalidation would run its query again.
+     */
+    private void cancelSearch() {
+        if (searchResults == null) {
+            return;
+        }
+
+        PagedList<GameSummary> results = searchResults.getValue();
+        if (results != null) {
+            results.detach();
+        }
+        searchResults = null;
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        handler.removeCallbacks(applySearch);
+        cancelSearch();
+    }
+
+    public LiveData<Integer> getPendingWriteCount() {
+        return gameRepository.getPendingWriteCount();
+    }
+
+    /**
+     * Builds the paging configuration of the game list from the values in res/values/paging.xml
+     */
+    private static PagedList.Config getPagingConfig(Application application) {
+        Resources resources = application.getResources();
+        return new PagedList.Config.Builder()
+                .setPageSize(resources.getInteger(R.integer.game_list_page_size))
+                .setPrefetchDistance(resources.getInteger(R.integer.game_list_prefetch_distance))
+                .setEnablePlaceholders(resources.getBoolean(R.bool.game_list_placeholders))
+                .build();
     }
 
     public GameRepository getGameRepository() {
@@ -9,6 +9,9 @@ import android.view.View;
 import android.widget.Toast;
 
 import com.ctse.androidgamereviewer.data.entities.Game;
+import com.ctse.androidgamereviewer.data.entities.GameSummary;
+import com.ctse.androidgamereviewer.data.images.ImageLoader;
+import com.ctse.androidgamereviewer.data.sync.OutboxWorker;
 import com.firebase.ui.auth.AuthUI;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
@@ -18,13 +21,14 @@ import com.google.firebase.auth.FirebaseUser;
 
 import org.bson.types.ObjectId;
 
-import java.util.List;
-
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProviders;
+import androidx.paging.PagedList;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
@@ -62,6 +66,7 @@ public class MainActivity extends AppCompatActivity {
 
     private GameViewModel gameViewModel;
     private ReviewViewModel reviewViewModel;
+    private ViewportPrefetcher prefetcher;
     SwipeRefreshLayout swipeRefreshLayout;
     FirebaseUser user;
 
@@ -69,6 +74,25 @@ public class MainActivity extends AppCompatActivity {
     public boolean onCreateOptionsMenu(Menu menu) {
         super.onCreateOptionsMenu(menu);
         getMenuInflater().inflate(R.menu.login_menu, menu);
+
+        // Games are searched as the query is typed, the view model debounces the typing
+        final SearchView searchView = (SearchView) menu.findItem(R.id.search_menu_item)
+                .getActionView();
+        searchView.setQueryHint(getString(R.string.search_games_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                gameViewModel.search(query);
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                gameViewModel.search(newText);
+                return true;
+            }
+        });
         return true;
     }
 
@@ -112,7 +136,8 @@ public class MainActivity extends AppCompatActivity {
         swipeRefreshLayout.setOnRefreshListener(new SwipeRefreshLayout.OnRefreshListener() {
             @Override
             public void onRefresh() {
-                gameViewModel.getGameRepository().refreshData(swipeRefreshLayout);
+                // The user asked for it, so the games are synced even if they just were
+                gameViewModel.getGameRepository().refreshData(swipeRefreshLayout, true);
             }
         });
 
@@ -125,11 +150,38 @@ public class MainActivity extends AppCompatActivity {
         reviewViewModel = ViewModelProviders.of(this).get(ReviewViewModel.class);
         reviewViewModel.getReviewRepository().refreshReviews();
 
+        if (savedInstanceState == null) {
+            // Send the writes left in the outbox by an earlier run of the app
+            OutboxWorker.schedule();
+        }
+
+        // Warm the reviews and thumbnails of the games near the screen before they are opened
+        prefetcher = new ViewportPrefetcher(new GameCacheWarmer(reviewViewModel,
+                ImageLoader.getInstance(this),
+                getResources().getDimensionPixelSize(R.dimen.game_thumbnail_size)),
+                getResources().getInteger(R.integer.game_list_viewport_prefetch_distance));
+        recyclerView.addOnScrollListener(prefetcher);
+        adapter.setViewportPrefetcher(prefetcher);
+
         gameViewModel = ViewModelProviders.of(this).get(GameViewModel.class);
-        gameViewModel.getAllGames().observe(this, new Observer<List<Game>>() {
+        gameViewModel.getListedGames().observe(this, new Observer<PagedList<GameSummary>>() {
+            @Override
+            public void onChanged(PagedList<GameSummary> games) {
+                adapter.submitList(games);
+            }
+        });
+
+        // Show how many saved games and reviews are still waiting to be uploaded
+        gameViewModel.getPendingWriteCount().observe(this, new Observer<Integer>() {
             @Override
-            public void onChanged(List<Game> games) {
-                adapter.setGames(games);
+            public void onChanged(Integer count) {
+                ActionBar actionBar = getSupportActionBar();
+                if (actionBar == null) {
+                    return;
+                }
+                actionBar.setSubtitle(count == null || count == 0 ? null
+                        : getResources().getQuantityString(R.plurals.pending_uploads, count,
+                        count));
             }
         });
 
@@ -155,6 +207,13 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        Log.d("MainActivity", "onDestroy: prefetch " + prefetcher.getStats());
+        prefetcher.cancelAll();
+        super.onDestroy();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
@@ -180,7 +239,7 @@ public class MainActivity extends AppCompatActivity {
         String title = data.getStringExtra(AddGameActivity.EXTRA_TITLE);
         String description = data.getStringExtra(AddGameActivity.EXTRA_DESCRIPTION);
         String releaseDate = data.getStringExtra(AddGameActivity.EXTRA_RELEASE_DATE);
-        String image = data.getStringExtra(AddGameActivity.EXTRA_IMAGE);
+        String imageHash = data.getStringExtra(AddGameActivity.EXTRA_IMAGE_HASH);
 
         Game game = new Game();
         ObjectId objectId = new ObjectId();
@@ -188,7 +247,7 @@ public class MainActivity extends AppCompatActivity {
         game.setTitle(title);
         game.setGenre(description);
         game.setRelease_date(releaseDate);
-        game.setImage(image);
+        game.setImageHash(imageHash);
         game.set_id(objectId.toString());
 
         gameViewModel.insert(game);
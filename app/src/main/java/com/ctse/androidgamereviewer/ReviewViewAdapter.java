@@ -8,19 +8,48 @@ import android.widget.TextView;
 
 import com.ctse.androidgamereviewer.data.entities.Review;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import androidx.annotation.NonNull;
+import androidx.core.util.ObjectsCompat;
+import androidx.paging.PagedListAdapter;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
-public class ReviewViewAdapter extends RecyclerView.Adapter<ReviewViewAdapter.ReviewHolder> {
+public class ReviewViewAdapter extends PagedListAdapter<Review, ReviewViewAdapter.ReviewHolder> {
 
-    private List<Review> reviews = new ArrayList<>();
     private Context mContext;
 
+    /**
+     * Used by the PagedListAdapter to work out, on a background thread, which reviews changed
+     * between two lists. Reviews are matched on their remote _id and only the displayed columns
+     * are compared.
+     */
+    static final DiffUtil.ItemCallback<Review> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<Review>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull Review oldItem, @NonNull Review newItem) {
+                    return ObjectsCompat.equals(oldItem.get_id(), newItem.get_id());
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull Review oldItem,
+                                                  @NonNull Review newItem) {
+                    return oldItem.getRating() == newItem.getRating()
+                            && ObjectsCompat.equals(oldItem.getTitle(), newItem.getTitle())
+                            && ObjectsCompat.equals(oldItem.getDate(), newItem.getDate())
+                            && ObjectsCompat.equals(oldItem.getBody(), newItem.getBody());
+                }
+            };
+
     public ReviewViewAdapter(Context mContext) {
+        super(DIFF_CALLBACK);
         this.mContext = mContext;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        Review review = getItem(position);
+        return review == null ? RecyclerView.NO_ID : StableIds.of(review.get_id());
     }
 
     @NonNull
@@ -32,23 +61,13 @@ public class ReviewViewAdapter extends RecyclerView.Adapter<ReviewViewAdapter.Re
 
     @Override
     public void onBindViewHolder(@NonNull ReviewHolder holder, int position) {
-        final Review currentReview = reviews.get(position);
+        final Review currentReview = getItem(position);
         holder.tvReviewTitle.setText(currentReview.getTitle());
         holder.tvReviewDate.setText(currentReview.getDate());
         holder.tvReviewBody.setText(currentReview.getBody());
         holder.tvRating.setText(currentReview.getRating() + "/5");
     }
 
-    @Override
-    public int getItemCount() {
-        return reviews.size();
-    }
-
-    void setReviews(List<Review> reviews) {
-        this.reviews = reviews;
-        notifyDataSetChanged();
-    }
-
     class ReviewHolder extends RecyclerView.ViewHolder {
 
         private TextView tvReviewTitle;
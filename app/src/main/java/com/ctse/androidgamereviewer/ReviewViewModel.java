@@ -1,6 +1,7 @@
 package com.ctse.androidgamereviewer;
 
 import android.app.Application;
+import android.content.res.Resources;
 
 import com.ctse.androidgamereviewer.data.ReviewRepository;
 import com.ctse.androidgamereviewer.data.entities.Review;
@@ -10,6 +11,7 @@ import java.util.List;
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.paging.PagedList;
 
 public class ReviewViewModel extends AndroidViewModel {
 
@@ -18,7 +20,7 @@ public class ReviewViewModel extends AndroidViewModel {
 
     public ReviewViewModel(@NonNull Application application) {
         super(application);
-        reviewRepository = new ReviewRepository(application);
+        reviewRepository = ReviewRepository.getInstance(application);
         allReviews = reviewRepository.getAllReviews();
     }
 
@@ -38,11 +40,24 @@ public class ReviewViewModel extends AndroidViewModel {
         return allReviews;
     }
 
-    public LiveData<List<Review>> getReviewForGame(String game_id) {
-        return reviewRepository.getReviewsForGame(game_id);
+    public LiveData<PagedList<Review>> getReviewForGame(String game_id) {
+        return reviewRepository.getReviewsForGame(game_id, getPagingConfig(getApplication()));
     }
 
     public ReviewRepository getReviewRepository() {
         return reviewRepository;
     }
+
+    /**
+     * Builds the paging configuration of the review list from the values in
+     * res/values/paging.xml
+     */
+    private static PagedList.Config getPagingConfig(Application application) {
+        Resources resources = application.getResources();
+        return new PagedList.Config.Builder()
+                .setPageSize(resources.getInteger(R.integer.review_list_page_size))
+                .setPrefetchDistance(resources.getInteger(R.integer.review_list_prefetch_distance))
+                .setEnablePlaceholders(false)
+                .build();
+    }
 }
@@ -0,0 +1,32 @@
+package com.ctse.androidgamereviewer;
+
+import com.ctse.androidgamereviewer.data.sync.ContentHash;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Helper to derive RecyclerView stable item ids from the remote MongoDB _id of an entity.
+ * The adapters tell items apart by their remote _id in their DiffUtil callbacks, so the stable
+ * ids are taken from the same key. A row which is deleted and synced again gets a new local id,
+ * while its remote _id stays the same.
+ */
+final class StableIds {
+
+    private StableIds() {
+    }
+
+    /**
+     * Hashes the remote id with the 64 bit FNV-1a of {@link ContentHash}.
+     *
+     * @param remoteId remote _id of the item, may be null for placeholders
+     * @return stable id of the item or RecyclerView.NO_ID if it has no remote id
+     */
+    static long of(String remoteId) {
+        if (remoteId == null) {
+            return RecyclerView.NO_ID;
+        }
+
+        long hash = ContentHash.of(remoteId);
+        return hash == RecyclerView.NO_ID ? 0 : hash;
+    }
+}
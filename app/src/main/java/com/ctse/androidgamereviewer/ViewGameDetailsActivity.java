@@ -1,10 +1,7 @@
 package com.ctse.androidgamereviewer;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Base64;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -16,19 +13,20 @@ import android.widget.Toast;
 
 import com.ctse.androidgamereviewer.data.entities.Game;
 import com.ctse.androidgamereviewer.data.entities.Review;
+import com.ctse.androidgamereviewer.data.images.ImageLoader;
 
 import org.bson.types.ObjectId;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProviders;
+import androidx.paging.PagedList;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -38,7 +36,11 @@ public class ViewGameDetailsActivity extends AppCompatActivity {
 
     private GameViewModel gameViewModel;
     private ReviewViewModel reviewViewModel;
-    private Game game;
+    /**
+     * Remote id of the shown game, the screen is keyed on it rather than on the loaded game
+     */
+    private String gameId;
+    private ImageView ivGameImage;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -52,10 +54,10 @@ public class ViewGameDetailsActivity extends AppCompatActivity {
         final TextView tvGameTitle = findViewById(R.id.text_view_game_title);
         final TextView tvGameGenre = findViewById(R.id.text_view_genre);
         final TextView tvGameReleaseDate = findViewById(R.id.text_view_release_date);
-        final ImageView ivGameImage = findViewById(R.id.image_view_game_image);
+        ivGameImage = findViewById(R.id.image_view_game_image);
+        final ImageLoader imageLoader = ImageLoader.getInstance(this);
 
-        final int position = getIntent().getIntExtra(GameViewAdapter.EXTRA_POSITION, -1);
-        final String gameId = getIntent().getStringExtra(GameViewAdapter.EXTRA_GAME_ID);
+        gameId = getIntent().getStringExtra(GameViewAdapter.EXTRA_GAME_ID);
 
         RecyclerView recyclerView = findViewById(R.id.recycler_view_reviews);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
@@ -64,26 +66,25 @@ public class ViewGameDetailsActivity extends AppCompatActivity {
         recyclerView.setAdapter(adapter);
 
         gameViewModel = ViewModelProviders.of(this).get(GameViewModel.class);
-        gameViewModel.getAllGames().observe(this, new Observer<List<Game>>() {
+        gameViewModel.getGame(gameId).observe(this, new Observer<Game>() {
             @Override
-            public void onChanged(List<Game> games) {
-                game = games.get(position);
+            public void onChanged(Game game) {
+                if (game == null) {
+                    return;
+                }
                 tvGameTitle.setText(game.getTitle());
                 tvGameGenre.setText(game.getGenre());
                 tvGameReleaseDate.setText(game.getRelease_date());
-                Bitmap bmp = decodeBase64(game.getImage());
-                if(bmp != null) {
-                    ivGameImage.setImageBitmap(bmp);
-                }
+                imageLoader.load(ivGameImage, game.get_id(), game.getImageHash());
             }
         });
 
         reviewViewModel = ViewModelProviders.of(this).get(ReviewViewModel.class);
-        reviewViewModel.getReviewForGame(gameId).observe(this, new Observer<List<Review>>() {
+        reviewViewModel.getReviewForGame(gameId).observe(this, new Observer<PagedList<Review>>() {
             @Override
-            public void onChanged(List<Review> reviews) {
+            public void onChanged(PagedList<Review> reviews) {
                 Log.d("GAME ID", "onChanged: " + gameId);
-                adapter.setReviews(reviews);
+                adapter.submitList(reviews);
             }
         });
 
@@ -98,16 +99,11 @@ public class ViewGameDetailsActivity extends AppCompatActivity {
 
     }
 
-    // ImageView decode
-    public Bitmap decodeBase64(String base64) {
-
-        if(base64 != null) {
-            byte [] decodedString = Base64.decode(base64, Base64.DEFAULT);
-            return BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length);
-        }
-
-        else return null;
-
+    // Cancel the image decode when the activity goes away
+    @Override
+    protected void onDestroy() {
+        ImageLoader.getInstance(this).cancel(ivGameImage);
+        super.onDestroy();
     }
 
     // Action bar back button
@@ -143,7 +139,8 @@ public class ViewGameDetailsActivity extends AppCompatActivity {
             review.setTitle(reviewTitle);
             review.setBody(reviewBody);
             review.setDate(dateFormat.format(date.getTime()));
-            review.setGameId(game.get_id());
+            // The game may not be loaded yet, its id is known from the intent
+            review.setGameId(gameId);
             review.set_id(objectId.toString());
 
             reviewViewModel.insert(review);
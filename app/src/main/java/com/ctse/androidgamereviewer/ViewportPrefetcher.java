@@ -0,0 +1,336 @@
+package com.ctse.androidgamereviewer;
+
+import com.ctse.androidgamereviewer.data.entities.GameSummary;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Warms the caches read by ViewGameDetailsActivity for the games near the viewport of the game
+ * list, so a tapped game opens with its reviews and cover ready instead of from cold.
+ * The games on screen are prefetched first, then the games within the prefetch distance ahead
+ * of the scroll, then the ones behind it. At most a few prefetches run at a time, and a
+ * prefetch is cancelled once its game is scrolled out of range.
+ * <p>
+ * Opened games are counted as hits when their prefetch had finished, see {@link #getStats()},
+ * so the prefetch distance can be tuned against the memory the warmed caches hold.
+ * Must be used on the main thread.
+ */
+public class ViewportPrefetcher extends RecyclerView.OnScrollListener {
+
+    /**
+     * Prefetches running at the same time. The covers are decoded on a lane of their own behind
+     * the visible rows, but the reviews are read on the lane which also loads the pages of the
+     * list, so at most this many prefetch queries wait in front of a visible page.
+     */
+    static final int MAX_IN_FLIGHT = 2;
+    /**
+     * Prefetched games remembered as warm, about as many as the caches keep
+     */
+    static final int WARM_CAPACITY = 32;
+
+    /**
+     * Warms the caches of one game
+     */
+    public interface Loader {
+
+        /**
+         * Starts warming the caches for a game.
+         *
+         * @param done must be run on the main thread once the caches are warm or could not be
+         *             warmed, it may be run before this method returns
+         * @return handle which stops the work
+         */
+        Cancellable start(GameSummary game, Runnable done);
+    }
+
+    public interface Cancellable {
+
+        void cancel();
+    }
+
+    private final Loader loader;
+    private final int distance;
+    private final int maxInFlight;
+
+    private final Map<String, Prefetch> inFlight = new LinkedHashMap<>();
+    private final List<GameSummary> queue = new ArrayList<>();
+    /**
+     * Games whose prefetch finished, mapped to whether they were opened since. Kept in access
+     * order and bounded, the eldest is dropped as its caches would be.
+     */
+    private final LinkedHashMap<String, Boolean> warm;
+    private boolean starting;
+
+    private int started;
+    private int completed;
+    private int cancelled;
+    private int hits;
+    private int misses;
+    private int unused;
+
+    /**
+     * @param distance number of games beyond each edge of the screen which are prefetched
+     */
+    public ViewportPrefetcher(Loader loader, int distance) {
+        this(loader, distance, MAX_IN_FLIGHT, WARM_CAPACITY);
+    }
+
+    ViewportPrefetcher(Loader loader, int distance, int maxInFlight, final int warmCapacity) {
+        this.loader = loader;
+        this.distance = distance;
+        this.maxInFlight = maxInFlight;
+        this.warm = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                if (size() <= warmCapacity) {
+                    return false;
+                }
+                if (!eldest.getValue()) {
+                    unused++;
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Called after every scroll and every layout of the list
+     */
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (!(recyclerView.getLayoutManager() instanceof LinearLayoutManager)
+                || !(recyclerView.getAdapter() instanceof GameViewAdapter)) {
+            return;
+        }
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        List<GameSummary> games = ((GameViewAdapter) recyclerView.getAdapter()).getCurrentList();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (games == null || first == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        onViewportChanged(games, first, last, dy >= 0);
+    }
+
+    /**
+     * Prefetches the games around the visible ones and cancels the prefetches of the games out
+     * of range.
+     *
+     * @param games   games of the list, null for the placeholders which are not loaded yet
+     * @param first   position of the first visible game
+     * @param last    position of the last visible game
+     * @param forward true while scrolling down the list
+     */
+    void onViewportChanged(List<GameSummary> games, int first, int last, boolean forward) {
+        List<GameSummary> wanted = new ArrayList<>();
+        addRange(wanted, games, first, last, 1);
+        if (forward) {
+            addRange(wanted, games, last + 1, last + distance, 1);
+            addRange(wanted, games, first - 1, first - distance, -1);
+        } else {
+            addRange(wanted, games, first - 1, first - distance, -1);
+            addRange(wanted, games, last + 1, last + distance, 1);
+        }
+
+        Set<String> wantedIds = new HashSet<>();
+        for (GameSummary game : wanted) {
+            wantedIds.add(game.get_id());
+        }
+        Iterator<Map.Entry<String, Prefetch>> iterator = inFlight.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Prefetch> entry = iterator.next();
+            if (!wantedIds.contains(entry.getKey())) {
+                iterator.remove();
+                entry.getValue().cancel();
+                cancelled++;
+            }
+        }
+
+        queue.clear();
+        for (GameSummary game : wanted) {
+            if (!inFlight.containsKey(game.get_id()) && !warm.containsKey(game.get_id())) {
+                queue.add(game);
+            }
+        }
+        startQueued();
+    }
+
+    /**
+     * Records that the user opened a game, counted as a hit if its caches were warmed
+     */
+    public void onGameOpened(String gameId) {
+        Boolean opened = warm.get(gameId);
+        if (opened == null) {
+            misses++;
+        } else {
+            hits++;
+            warm.put(gameId, true);
+        }
+    }
+
+    /**
+     * Cancels every prefetch, for example when the list goes away
+     */
+    public void cancelAll() {
+        queue.clear();
+        for (Prefetch prefetch : inFlight.values()) {
+            prefetch.cancel();
+            cancelled++;
+        }
+        inFlight.clear();
+    }
+
+    public Stats getStats() {
+        return new Stats(started, completed, cancelled, hits, misses, unused);
+    }
+
+    private static void addRange(List<GameSummary> wanted, List<GameSummary> games,
+                                 int from, int to, int step) {
+        for (int i = from; step > 0 ? i <= to : i >= to; i += step) {
+            if (i < 0 || i >= games.size()) {
+                continue;
+            }
+            GameSummary game = games.get(i);
+            if (game != null && game.get_id() != null) {
+                wanted.add(game);
+            }
+        }
+    }
+
+    private void startQueued() {
+        // A prefetch which finishes straight away starts the next one from this loop
+        if (starting) {
+            return;
+        }
+
+        starting = true;
+        try {
+            while (inFlight.size() < maxInFlight && !queue.isEmpty()) {
+                GameSummary game = queue.remove(0);
+                Prefetch prefetch = new Prefetch(game.get_id());
+                inFlight.put(prefetch.gameId, prefetch);
+                started++;
+                prefetch.handle = loader.start(game, prefetch);
+            }
+        } finally {
+            starting = false;
+        }
+    }
+
+    /**
+     * A prefetch which was started, run once it is done
+     */
+    private class Prefetch implements Runnable {
+
+        private final String gameId;
+        private Cancellable handle;
+
+        private Prefetch(String gameId) {
+            this.gameId = gameId;
+        }
+
+        @Override
+        public void run() {
+            // A cancelled prefetch may still report back, it is no longer in flight
+            if (inFlight.get(gameId) != this) {
+                return;
+            }
+            inFlight.remove(gameId);
+            completed++;
+            warm.put(gameId, false);
+            startQueued();
+        }
+
+        private void cancel() {
+            if (handle != null) {
+                handle.cancel();
+            }
+        }
+    }
+
+    /**
+     * Counters of the prefetches since the prefetcher was created
+     */
+    public static class Stats {
+
+        private final int started;
+        private final int completed;
+        private final int cancelled;
+        private final int hits;
+        private final int misses;
+        private final int unused;
+
+        Stats(int started, int completed, int cancelled, int hits, int misses, int unused) {
+            this.started = started;
+            this.completed = completed;
+            this.cancelled = cancelled;
+            this.hits = hits;
+            this.misses = misses;
+            this.unused = unused;
+        }
+
+        public int getStarted() {
+            return started;
+        }
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return prefetches stopped because their game was scrolled out of range
+         */
+        public int getCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return opened games whose prefetch had finished
+         */
+        public int getHits() {
+            return hits;
+        }
+
+        /**
+         * @return opened games which were not prefetched, or whose prefetch was still running
+         */
+        public int getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return finished prefetches which were forgotten without their game being opened
+         */
+        public int getUnused() {
+            return unused;
+        }
+
+        /**
+         * @return share of the opened games which were warm, 0 if no game was opened
+         */
+        public double getHitRate() {
+            int opened = hits + misses;
+            return opened == 0 ? 0 : (double) hits / opened;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "started %d, completed %d, cancelled %d, "
+                            + "hits %d, misses %d (%.0f%%), unused %d", started, completed,
+                    cancelled, hits, misses, getHitRate() * 100, unused);
+        }
+    }
+}
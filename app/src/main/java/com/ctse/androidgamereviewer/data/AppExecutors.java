@@ -0,0 +1,168 @@
+package com.ctse.androidgamereviewer.data;
+
+import android.os.Process;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background executors shared by every repository of the app.
+ * Each executor has a fixed number of named threads which stop once they were idle for
+ * {@link #KEEP_ALIVE_SECONDS}, so the app does not keep threads around while nothing is
+ * syncing, and opening more screens never starts more threads.
+ * <p>
+ * The data layer runs on three lanes: writes the user is waiting for, writes made by a sync,
+ * and reads. Each lane has its own threads and queue, so a user's write never queues behind a
+ * bulk sync. A sync writes in short transactions at background priority, so a user's write
+ * waits for at most one sync batch to release the database. Queues are bounded, a task
+ * submitted to a full queue is refused with a {@link RejectedExecutionException} rather than
+ * piling up in memory.
+ * <p>
+ * See <a href="https://developer.android.com/guide/background">Guide to background
+ * processing</a> for more information.
+ */
+public class AppExecutors {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final int USER_WRITE_QUEUE_SIZE = 64;
+    private static final int SYNC_QUEUE_SIZE = 4;
+    private static final int READ_THREADS = 2;
+    private static final int READ_QUEUE_SIZE = 128;
+
+    private static AppExecutors instance;
+
+    private final ExecutorService userWrites;
+    private final ExecutorService sync;
+    private final ExecutorService reads;
+    private final ScheduledThreadPoolExecutor timer;
+
+    private AppExecutors() {
+        userWrites = newExecutor("app-user-writes", 1, USER_WRITE_QUEUE_SIZE,
+                Process.THREAD_PRIORITY_DEFAULT);
+        sync = newExecutor("app-sync", 1, SYNC_QUEUE_SIZE, Process.THREAD_PRIORITY_BACKGROUND);
+        reads = newExecutor("app-reads", READ_THREADS, READ_QUEUE_SIZE,
+                Process.THREAD_PRIORITY_DEFAULT);
+        timer = new ScheduledThreadPoolExecutor(1,
+                new PriorityThreadFactory("app-timer", Process.THREAD_PRIORITY_DEFAULT));
+        timer.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        timer.allowCoreThreadTimeOut(true);
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    public static synchronized AppExecutors getInstance() {
+
+        if (instance == null) {
+            instance = new AppExecutors();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Runs the writes a user made, such as saving a review, one at a time and in the order they
+     * were submitted. The returned future completes once the write is committed.
+     */
+    public ExecutorService userWrites() {
+        return userWrites;
+    }
+
+    /**
+     * Runs syncs with the web service one at a time, so two syncs never write the same rows or
+     * move the same sync cursor at once. Runs at background priority.
+     */
+    public ExecutorService sync() {
+        return sync;
+    }
+
+    /**
+     * Runs database reads which are not run by Room itself, such as the pages of a paged list
+     */
+    public ExecutorService reads() {
+        return reads;
+    }
+
+    /**
+     * Runs short tasks after a delay, such as handing a batch of writes to another lane. Its
+     * tasks must not block, since they share one thread.
+     */
+    public ScheduledExecutorService timer() {
+        return timer;
+    }
+
+    /**
+     * Stops every executor after the tasks which were already submitted, and waits for them to
+     * finish. The next call to {@link #getInstance()} creates new executors.
+     *
+     * @param timeout longest time to wait for each executor
+     * @param unit    unit of the timeout
+     * @return true if every executor finished within the timeout
+     */
+    public static boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        AppExecutors executors;
+        synchronized (AppExecutors.class) {
+            executors = instance;
+            instance = null;
+        }
+        if (executors == null) {
+            return true;
+        }
+
+        boolean terminated = true;
+        for (ExecutorService executor : new ExecutorService[]{executors.userWrites,
+                executors.sync, executors.reads, executors.timer}) {
+            executor.shutdown();
+            terminated &= executor.awaitTermination(timeout, unit);
+        }
+        return terminated;
+    }
+
+    /**
+     * Helper method to create a bounded executor whose threads stop when they are idle
+     *
+     * @param priority Linux priority of the threads, see {@link Process}
+     */
+    private static ExecutorService newExecutor(String name, int threads, int queueSize,
+                                               int priority) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+                new PriorityThreadFactory(name, priority));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates named daemon threads with the given priority. Sync threads run at background
+     * priority, so they do not compete with the UI thread or with the user's writes.
+     */
+    private static class PriorityThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final int priority;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private PriorityThreadFactory(String name, int priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(priority);
+                    runnable.run();
+                }
+            }, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
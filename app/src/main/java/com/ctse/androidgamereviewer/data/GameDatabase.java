@@ -1,15 +1,31 @@
 package com.ctse.androidgamereviewer.data;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
 
 import com.ctse.androidgamereviewer.data.dao.GameDAO;
+import com.ctse.androidgamereviewer.data.dao.OutboxDAO;
 import com.ctse.androidgamereviewer.data.dao.ReviewDAO;
 import com.ctse.androidgamereviewer.data.entities.Game;
+import com.ctse.androidgamereviewer.data.entities.GameFts;
+import com.ctse.androidgamereviewer.data.entities.GameRating;
+import com.ctse.androidgamereviewer.data.entities.OutboxEntry;
 import com.ctse.androidgamereviewer.data.entities.Review;
+import com.ctse.androidgamereviewer.data.entities.ReviewFts;
+import com.ctse.androidgamereviewer.data.entities.SyncCursor;
+import com.ctse.androidgamereviewer.data.images.ImageStore;
 
+import java.io.IOException;
+
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 /**
  * Singleton class which return an instance of GameDatabase using the Room databaseBuilder class.
@@ -19,7 +35,8 @@ import androidx.room.RoomDatabase;
  * <a href="https://developer.android.com/topic/libraries/architecture/room">
  * Official Room Documentation</a>
  */
-@Database(entities = {Game.class, Review.class}, version = 5, exportSchema = false)
+@Database(entities = {Game.class, Review.class, GameRating.class, SyncCursor.class,
+        OutboxEntry.class, GameFts.class, ReviewFts.class}, version = 16, exportSchema = false)
 public abstract class GameDatabase extends RoomDatabase {
 
     private static GameDatabase instance;
@@ -28,16 +45,278 @@ public abstract class GameDatabase extends RoomDatabase {
 
     public abstract ReviewDAO reviewDAO();
 
+    public abstract OutboxDAO outboxDAO();
+
     public static synchronized GameDatabase getInstance(Context context) {
 
         if (instance == null) {
             instance = Room.databaseBuilder(context.getApplicationContext(),
                     GameDatabase.class, "game_database")
-                    .fallbackToDestructiveMigration()
+                    .addMigrations(migration5To6(ImageStore.getInstance(context)),
+                            MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9,
+                            MIGRATION_9_10, MIGRATION_10_11, MIGRATION_11_12, MIGRATION_12_13,
+                            MIGRATION_13_14, MIGRATION_14_15,
+                            MIGRATION_15_16)
+                    // Versions before 5 were never released with a migration path
+                    .fallbackToDestructiveMigrationFrom(1, 2, 3, 4)
                     .build();
         }
 
         return instance;
     }
 
+    /**
+     * Moves the Base64 encoded cover images out of the Game table and into the ImageStore.
+     * Each row keeps only the hash of its image. SQLite cannot drop a column, so the Game table
+     * is rebuilt without the image column once every image has been moved.
+     *
+     * @param imageStore store which receives the images
+     */
+    static Migration migration5To6(final ImageStore imageStore) {
+        return new Migration(5, 6) {
+            @Override
+            public void migrate(@NonNull SupportSQLiteDatabase database) {
+                database.execSQL("ALTER TABLE Game ADD COLUMN image_hash TEXT");
+
+                Cursor cursor = database.query("SELECT id, image FROM Game WHERE image IS NOT NULL");
+                try {
+                    while (cursor.moveToNext()) {
+                        ContentValues values = new ContentValues();
+                        try {
+                            values.put("image_hash", imageStore.putBase64(cursor.getString(1)));
+                        } catch (IOException e) {
+                            Log.d("GameDatabase", "migrate: image of game "
+                                    + cursor.getInt(0) + " dropped", e);
+                            continue;
+                        }
+                        database.update("Game", SQLiteDatabase.CONFLICT_NONE, values,
+                                "id = ?", new Object[]{cursor.getInt(0)});
+                    }
+                } finally {
+                    cursor.close();
+                }
+
+                database.execSQL("CREATE TABLE Game_new (id INTEGER PRIMARY KEY AUTOINCREMENT "
+                        + "NOT NULL, _id TEXT, game_title TEXT, genre TEXT, image_hash TEXT, "
+                        + "release_date TEXT)");
+                database.execSQL("INSERT INTO Game_new (id, _id, game_title, genre, image_hash, "
+                        + "release_date) SELECT id, _id, game_title, genre, image_hash, "
+                        + "release_date FROM Game");
+                database.execSQL("DROP TABLE Game");
+                database.execSQL("ALTER TABLE Game_new RENAME TO Game");
+                database.execSQL("CREATE UNIQUE INDEX index_Game_game_title ON Game (game_title)");
+            }
+        };
+    }
+
+    /**
+     * Indexes the Review table on gameId, so the reviews of a game are found without scanning
+     * every review.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_Review_gameId "
+                    + "ON Review (gameId)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_Review_gameId_date "
+                    + "ON Review (gameId, date)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_Review_gameId_rating "
+                    + "ON Review (gameId, rating)");
+        }
+    };
+
+    /**
+     * Creates the GameRating aggregate table and fills it from the existing reviews. Game is
+     * indexed on its remote id so the aggregate can be joined to it.
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS GameRating (gameId TEXT NOT NULL, "
+                    + "review_count INTEGER NOT NULL, rating_sum INTEGER NOT NULL, "
+                    + "stars_1 INTEGER NOT NULL, stars_2 INTEGER NOT NULL, "
+                    + "stars_3 INTEGER NOT NULL, stars_4 INTEGER NOT NULL, "
+                    + "stars_5 INTEGER NOT NULL, average_rating REAL NOT NULL, "
+                    + "PRIMARY KEY(gameId))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_GameRating_average_rating "
+                    + "ON GameRating (average_rating)");
+            database.execSQL("INSERT INTO GameRating (gameId, review_count, rating_sum, "
+                    + "stars_1, stars_2, stars_3, stars_4, stars_5, average_rating) "
+                    + "SELECT gameId, COUNT(*), SUM(rating), SUM(rating = 1), SUM(rating = 2), "
+                    + "SUM(rating = 3), SUM(rating = 4), SUM(rating = 5), AVG(rating) "
+                    + "FROM Review WHERE gameId IS NOT NULL GROUP BY gameId");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_Game__id ON Game (_id)");
+        }
+    };
+
+    /**
+     * Adds the updated_at sequence to Game and the SyncCursor table for delta syncs. Existing
+     * installs start without a cursor, so their first refresh fetches every game once.
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE Game ADD COLUMN updated_at INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("CREATE TABLE IF NOT EXISTS SyncCursor (resource TEXT NOT NULL, "
+                    + "cursor INTEGER NOT NULL, PRIMARY KEY(resource))");
+        }
+    };
+
+    /**
+     * Makes the remote id of a game unique, so synced games can be updated in place instead of
+     * being replaced. Duplicates left behind by earlier syncs keep only their newest row.
+     */
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DELETE FROM Game WHERE _id IS NOT NULL AND id NOT IN "
+                    + "(SELECT MAX(id) FROM Game WHERE _id IS NOT NULL GROUP BY _id)");
+            database.execSQL("DROP INDEX IF EXISTS index_Game__id");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS index_Game__id ON Game (_id)");
+        }
+    };
+
+    /**
+     * Adds the content hash of synced games and reviews. Existing rows start with no hash, so the
+     * first sync after the upgrade writes them once more.
+     */
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE Game ADD COLUMN content_hash INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE Review ADD COLUMN content_hash INTEGER NOT NULL "
+                    + "DEFAULT 0");
+        }
+    };
+
+    /**
+     * Creates the Outbox table which holds the writes still to be sent to the web service.
+     */
+    static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS Outbox ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, entity_type TEXT NOT NULL, "
+                    + "entity_key TEXT NOT NULL, operation TEXT NOT NULL, payload TEXT NOT NULL, "
+                    + "attempts INTEGER NOT NULL, next_attempt_at INTEGER NOT NULL, "
+                    + "created_at INTEGER NOT NULL, last_error TEXT)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_Outbox_entity_type_entity_key_id "
+                    + "ON Outbox (entity_type, entity_key, id)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_Outbox_next_attempt_at "
+                    + "ON Outbox (next_attempt_at)");
+        }
+    };
+
+    /**
+     * Creates the GameFts and ReviewFts full-text indexes, the triggers which keep them in step
+     * with their content tables, and indexes the existing games and reviews. The statements
+     * match the ones Room creates for a new install.
+     */
+    static final Migration MIGRATION_12_13 = new Migration(12, 13) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            createFtsIndex(database, "GameFts", "Game", "game_title", "genre");
+            createFtsIndex(database, "ReviewFts", "Review", "title", "body");
+        }
+    };
+
+    /**
+     * Adds the release date of each game as an epoch day, parsed from the release_date text of
+     * the existing games, and indexes it for the newest first and released between queries.
+     * Dates which cannot be parsed are left null.
+     */
+    static final Migration MIGRATION_13_14 = new Migration(13, 14) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE Game ADD COLUMN release_epoch_day INTEGER");
+
+            Cursor cursor = database.query("SELECT id, release_date FROM Game "
+                    + "WHERE release_date IS NOT NULL");
+            try {
+                while (cursor.moveToNext()) {
+                    Long epochDay = ReleaseDates.toEpochDay(cursor.getString(1));
+                    if (epochDay == null) {
+                        continue;
+                    }
+                    ContentValues values = new ContentValues();
+                    values.put("release_epoch_day", epochDay);
+                    database.update("Game", SQLiteDatabase.CONFLICT_NONE, values,
+                            "id = ?", new Object[]{cursor.getInt(0)});
+                }
+            } finally {
+                cursor.close();
+            }
+
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_Game_release_epoch_day "
+                    + "ON Game (release_epoch_day)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_Game_genre_release_epoch_day "
+                    + "ON Game (genre, release_epoch_day)");
+        }
+    };
+
+    /**
+     * Makes the date of a review NOT NULL, so the date and id keyset of the review pages orders
+     * every review. Reviews without a date are given an empty one, which sorts after every date.
+     * SQLite cannot change a column, so the Review table is rebuilt with the same ids, and its
+     * indexes and full-text triggers are created again.
+     */
+    static final Migration MIGRATION_14_15 = new Migration(14, 15) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE Review_new (id INTEGER PRIMARY KEY AUTOINCREMENT "
+                    + "NOT NULL, remote_id TEXT, gameId TEXT, title TEXT, body TEXT, "
+                    + "date TEXT NOT NULL, rating INTEGER NOT NULL, "
+                    + "content_hash INTEGER NOT NULL)");
+            database.execSQL("INSERT INTO Review_new (id, remote_id, gameId, title, body, date, "
+                    + "rating, content_hash) SELECT id, remote_id, gameId, title, body, "
+                    + "IFNULL(date, ''), rating, content_hash FROM Review");
+            database.execSQL("DROP TABLE Review");
+            database.execSQL("ALTER TABLE Review_new RENAME TO Review");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS index_Review_remote_id "
+                    + "ON Review (remote_id)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_Review_gameId "
+                    + "ON Review (gameId)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_Review_gameId_date "
+                    + "ON Review (gameId, date)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_Review_gameId_rating "
+                    + "ON Review (gameId, rating)");
+            createFtsIndex(database, "ReviewFts", "Review", "title", "body");
+        }
+    };
+
+    /**
+     * Extends the index on the average rating with the game id, the tie-breaker of the top rated
+     * list, so the whole order of the list is read from the index.
+     */
+    static final Migration MIGRATION_15_16 = new Migration(15, 16) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP INDEX IF EXISTS index_GameRating_average_rating");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_GameRating_average_rating_gameId "
+                    + "ON GameRating (average_rating, gameId)");
+        }
+    };
+
+    /**
+     * Creates an external content FTS4 table over two columns of a content table and fills it
+     */
+    private static void createFtsIndex(SupportSQLiteDatabase database, String fts,
+                                       String content, String first, String second) {
+        database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `" + fts + "` USING FTS4(`"
+                + first + "` TEXT, `" + second + "` TEXT, content=`" + content + "`)");
+
+        String delete = " ON `" + content + "` BEGIN DELETE FROM `" + fts
+                + "` WHERE `docid`=OLD.`rowid`; END";
+        String insert = " ON `" + content + "` BEGIN INSERT INTO `" + fts + "`(`docid`, `"
+                + first + "`, `" + second + "`) VALUES (NEW.`rowid`, NEW.`" + first
+                + "`, NEW.`" + second + "`); END";
+        String trigger = "CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_" + fts + "_";
+        database.execSQL(trigger + "BEFORE_UPDATE BEFORE UPDATE" + delete);
+        database.execSQL(trigger + "BEFORE_DELETE BEFORE DELETE" + delete);
+        database.execSQL(trigger + "AFTER_UPDATE AFTER UPDATE" + insert);
+        database.execSQL(trigger + "AFTER_INSERT AFTER INSERT" + insert);
+
+        database.execSQL("INSERT INTO `" + fts + "`(`" + fts + "`) VALUES ('rebuild')");
+    }
+
 }
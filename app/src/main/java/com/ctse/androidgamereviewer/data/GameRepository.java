@@ -1,24 +1,34 @@
 package com.ctse.androidgamereviewer.data;
 
 import android.app.Application;
-import android.os.AsyncTask;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.ctse.androidgamereviewer.data.dao.GameDAO;
 import com.ctse.androidgamereviewer.data.entities.Game;
+import com.ctse.androidgamereviewer.data.entities.GameSummary;
+import com.ctse.androidgamereviewer.data.entities.OutboxEntry;
+import com.ctse.androidgamereviewer.data.entities.SyncCursor;
+import com.ctse.androidgamereviewer.data.images.ImageStore;
+import com.ctse.androidgamereviewer.data.retrofit.ApiClient;
 import com.ctse.androidgamereviewer.data.retrofit.GameWebService;
+import com.ctse.androidgamereviewer.data.sync.OutboxCoalescer;
+import com.ctse.androidgamereviewer.data.sync.OutboxWorker;
+import com.ctse.androidgamereviewer.data.sync.SingleFlight;
+import com.ctse.androidgamereviewer.data.sync.StreamingIngest;
+import com.ctse.androidgamereviewer.data.sync.SyncStats;
 
+import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 import androidx.lifecycle.LiveData;
+import androidx.paging.LivePagedListBuilder;
+import androidx.paging.PagedList;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
-import retrofit2.Call;
-import retrofit2.Callback;
+import okhttp3.ResponseBody;
 import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 
 /**
  * The Repository class is the highest level of abstraction for persistent data operations.
@@ -31,6 +41,20 @@ import retrofit2.converter.gson.GsonConverterFactory;
  */
 public class GameRepository {
 
+    /**
+     * Number of synced games written per transaction. Kept small since every game may carry a
+     * Base64 encoded cover until its batch is written.
+     */
+    static final int SYNC_BATCH_SIZE = 20;
+    /**
+     * Number of games kept by the cache of the detail screen
+     */
+    static final int GAME_CACHE_SIZE = 32;
+    /**
+     * Time after a games sync during which a refresh which is not forced is skipped
+     */
+    static final long MIN_REFRESH_INTERVAL_MILLIS = 30_000;
+
     /**
      * GameDAO is Room Data access object for handling local DB operations
      *
@@ -38,183 +62,417 @@ public class GameRepository {
      */
     private GameDAO gameDAO;
     /**
-     * GameWebservice Retrofit webservice for handling remote DB  operations
+     * GameWebservice Retrofit webservice for handling remote DB  operations, shared by the
+     * whole app
      */
     private GameWebService webService;
-    /**
-     * Executor For handling concurrent tasks
-     */
-    private Executor executor;
     /**
      * GameDatabase is a Room Database class which creates instances of Data Access Objects
      */
     private GameDatabase database;
+    /**
+     * Commits the writes of the user in batches, shared by every repository
+     */
+    private WriteBehindBuffer writeBuffer;
+    /**
+     * ImageStore keeps the cover images outside of the Game table
+     */
+    private ImageStore imageStore;
+    /**
+     * Parses the games response as it is downloaded
+     */
+    private StreamingIngest<Game> gameIngest;
+    /**
+     * Counters of the last completed games sync
+     */
+    private volatile SyncStats lastSyncStats;
+    /**
+     * Runs one games sync at a time, shared by every refresh which asks for it meanwhile
+     */
+    private SingleFlight<SyncStats> gameSync;
 
     /**
-     * List of games is stored with the LiveData wrapper. LiveData follows the Observer pattern
-     * and notifies the View whenever the data changes. LiveData is lifecycle aware and hence will
-     * not update Observers which are in an inactive state.
-     * <p>
-     * See <a href="https://developer.android.com/topic/libraries/architecture/livedata">
-     * LiveData Documentation</a> for more information.
-     *
-     * @see LiveData
+     * Observable games recently opened on the detail screen, by their remote id
      */
-    private LiveData<List<Game>> allGames;
+    private final LruCache<String, LiveData<Game>> gameCache = new LruCache<>(GAME_CACHE_SIZE);
 
-    public GameRepository(Application application) {
-        database = GameDatabase.getInstance(application);
+    private static GameRepository instance;
+
+    private GameRepository(Application application) {
+        this(GameDatabase.getInstance(application), ApiClient.getWebService(),
+                ImageStore.getInstance(application));
+    }
+
+    /**
+     * Creates a repository over the given database and web service, so a sync can be run
+     * against a test database and a local stand-in for the web service
+     */
+    GameRepository(GameDatabase database, GameWebService webService, ImageStore imageStore) {
+        this.database = database;
+        writeBuffer = WriteBehindBuffer.getInstance(database);
         gameDAO = database.gameDAO();
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl("https://ctse-test-api.herokuapp.com/")
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-        webService = retrofit.create(GameWebService.class);
-        executor = Executors.newSingleThreadExecutor();
-        /*
-          getAllGames() returns data wrapped in a LiveData object which can directly be assigned to
-          the allGames List.
-         */
-        allGames = gameDAO.getAllGames();
+        this.imageStore = imageStore;
+        this.webService = webService;
+        gameIngest = new StreamingIngest<>(ApiClient.getGson(), Game.class, SYNC_BATCH_SIZE);
+        gameSync = new SingleFlight<>(AppExecutors.getInstance().sync(),
+                new Callable<SyncStats>() {
+                    @Override
+                    public SyncStats call() throws IOException {
+                        return syncGames();
+                    }
+                }, MIN_REFRESH_INTERVAL_MILLIS);
+
+    }
+
+    /**
+     * Returns the repository of the app. Every screen shares it, together with its executors and
+     * its LiveData, so opening a screen does not create another copy.
+     */
+    public static synchronized GameRepository getInstance(Application application) {
+
+        if (instance == null) {
+            instance = new GameRepository(application);
+        }
 
+        return instance;
     }
 
     /**
-     * inserts a new game object into the database. Game is inserted into the local database as
-     * well as the remote database. To avoid blocking the main thread, database operations are
-     * carried out on separate threads. This enables a smooth user experience.
+     * inserts a new game object into the database. Game is inserted into the local database and
+     * queued in the outbox in the same transaction. The outbox is sent to the remote database in
+     * the background and retried until it succeeds, so a game added while offline is not lost.
+     * To avoid blocking the main thread, database operations are carried out on the user writes
+     * lane of {@link AppExecutors}, batched with other writes by the {@link WriteBehindBuffer}.
      *
      * @param game entity object to be persisted
+     * @see OutboxWorker
      */
     public void insert(final Game game) {
-        // Insert game into local SQLite Database asynchronously
-        new InsertGameAsyncTask(gameDAO).execute(game);
+        writeBuffer.submit(new WriteBehindBuffer.Write() {
+
+            private OutboxEntry entry;
 
-        // Thread to insert game into remote MongoDB database asynchronously
-        executor.execute(new Runnable() {
             @Override
-            public void run() {
-                webService.saveGame(game).enqueue(new Callback<Game>() {
-                    @Override
-                    public void onResponse(Call<Game> call, Response<Game> response) {
-                        Log.d("gameApp", "Game saved to online DB");
-                    }
+            protected void prepare() {
+                // The outbox only references the image, it is read back when the game is sent
+                storeImage(imageStore, game);
+                entry = new OutboxEntry(OutboxEntry.TYPE_GAME,
+                        game.get_id() != null ? game.get_id() : String.valueOf(game.getTitle()),
+                        OutboxEntry.OPERATION_CREATE, ApiClient.getGson().toJson(game),
+                        System.currentTimeMillis());
+            }
 
-                    @Override
-                    public void onFailure(Call<Game> call, Throwable t) {
-                        Log.d("gameApp", "Game not saved");
-                        t.printStackTrace();
-                    }
-                });
+            @Override
+            protected void apply() {
+                gameDAO.insertGame(game);
+                database.outboxDAO().insert(entry);
+            }
+
+            @Override
+            protected void committed() {
+                OutboxCoalescer.getInstance().onEnqueued();
+            }
+
+            @Override
+            protected void failed(Exception error) {
+                // The buffer has logged the stack trace, this names the game
+                Log.w("GameRepository", "insert: game " + game.getTitle() + " was not saved: "
+                        + error.getMessage());
             }
         });
     }
 
-    public void update(Game game) {
-        new UpdateGameAsyncTask(gameDAO).execute(game);
+    public void update(final Game game) {
+        writeBuffer.submit(new WriteBehindBuffer.Write() {
+            @Override
+            protected void apply() {
+                gameDAO.update(game);
+            }
+        });
     }
 
-    public void delete(Game game) {
-        new DeleteGameAsyncTask(gameDAO).execute(game);
+    public void delete(final Game game) {
+        writeBuffer.submit(new WriteBehindBuffer.Write() {
+            @Override
+            protected void apply() {
+                gameDAO.delete(game);
+            }
+        });
     }
 
     /**
-     * @return allGames : Observable list of games.
+     * @return Observable number of games and reviews which were saved locally but not yet
+     * accepted by the remote database
      */
-    public LiveData<List<Game>> getAllGames() {
-        return allGames;
+    public LiveData<Integer> getPendingWriteCount() {
+        return database.outboxDAO().getPendingCount();
     }
 
-    private static class InsertGameAsyncTask extends AsyncTask<Game, Void, Void> {
-
-        private GameDAO gameDAO;
-
-        private InsertGameAsyncTask(GameDAO gameDAO) {
-            this.gameDAO = gameDAO;
+    /**
+     * Returns one game, read by its remote id. The LiveData of recently opened games is kept,
+     * and Room only runs its query again once the Game table changed, so opening a game again
+     * shows the game it still holds without reading the database.
+     * Must be called on the main thread.
+     *
+     * @param remoteId remote _id of the game
+     * @return Observable game, null while no game has the id
+     */
+    public LiveData<Game> getGameByRemoteId(String remoteId) {
+        if (remoteId == null) {
+            return gameDAO.getGameByRemoteId(null);
         }
 
-        @Override
-        protected Void doInBackground(Game... games) {
-            gameDAO.insertGame(games[0]);
-            return null;
+        LiveData<Game> game = gameCache.get(remoteId);
+        if (game == null) {
+            game = gameDAO.getGameByRemoteId(remoteId);
+            gameCache.put(remoteId, game);
         }
+        return game;
     }
 
-    private static class InsertAllGameAsyncTask extends AsyncTask<List<Game>, Void, Void> {
-
-        private GameDAO gameDAO;
-
-        private InsertAllGameAsyncTask(GameDAO gameDAO) {
-            this.gameDAO = gameDAO;
-        }
-
-        @Override
-        protected Void doInBackground(List<Game>... lists) {
-            gameDAO.insertMany(lists[0]);
-            return null;
-        }
+    /**
+     * Pages through the title and genre of every game. Pages are loaded from the database as
+     * the list scrolls, so memory use depends on the rows near the screen and not on the size
+     * of the catalogue.
+     * <p>
+     * See <a href="https://developer.android.com/topic/libraries/architecture/paging">
+     * Paging library documentation</a> for more information.
+     *
+     * @param config page size, placeholders and prefetch distance of the list
+     * @return Observable paged list of games.
+     */
+    public LiveData<PagedList<GameSummary>> getGameSummaries(PagedList.Config config) {
+        return new LivePagedListBuilder<>(gameDAO.getGameSummaries(), config)
+                .setFetchExecutor(AppExecutors.getInstance().reads())
+                .build();
     }
 
-    private static class UpdateGameAsyncTask extends AsyncTask<Game, Void, Void> {
-
-        private GameDAO gameDAO;
+    /**
+     * Pages through the rated games, best rated first.
+     *
+     * @param config page size, placeholders and prefetch distance of the list
+     * @return Observable paged list of games.
+     */
+    public LiveData<PagedList<GameSummary>> getTopRatedGameSummaries(PagedList.Config config) {
+        return new LivePagedListBuilder<>(gameDAO.getTopRatedGameSummaries(), config)
+                .setFetchExecutor(AppExecutors.getInstance().reads())
+                .build();
+    }
 
-        private UpdateGameAsyncTask(GameDAO gameDAO) {
-            this.gameDAO = gameDAO;
-        }
+    /**
+     * Pages through the games, newest release first.
+     *
+     * @param config page size, placeholders and prefetch distance of the list
+     * @return Observable paged list of games.
+     */
+    public LiveData<PagedList<GameSummary>> getNewestGameSummaries(PagedList.Config config) {
+        return new LivePagedListBuilder<>(gameDAO.getNewestGameSummaries(), config)
+                .setFetchExecutor(AppExecutors.getInstance().reads())
+                .build();
+    }
 
-        @Override
-        protected Void doInBackground(Game... games) {
-            gameDAO.update(games[0]);
-            return null;
-        }
+    /**
+     * Pages through the games released between two days, both included, newest first.
+     *
+     * @param fromEpochDay first day of the range, see {@link ReleaseDates}
+     * @param toEpochDay   last day of the range
+     * @param config       page size, placeholders and prefetch distance of the list
+     * @return Observable paged list of games.
+     */
+    public LiveData<PagedList<GameSummary>> getGameSummariesReleasedBetween(
+            long fromEpochDay, long toEpochDay, PagedList.Config config) {
+        return new LivePagedListBuilder<>(
+                gameDAO.getGameSummariesReleasedBetween(fromEpochDay, toEpochDay), config)
+                .setFetchExecutor(AppExecutors.getInstance().reads())
+                .build();
     }
 
-    private static class DeleteGameAsyncTask extends AsyncTask<Game, Void, Void> {
+    /**
+     * Pages through the games of one genre, newest release first.
+     *
+     * @param config page size, placeholders and prefetch distance of the list
+     * @return Observable paged list of games.
+     */
+    public LiveData<PagedList<GameSummary>> getNewestGameSummariesByGenre(
+            String genre, PagedList.Config config) {
+        return new LivePagedListBuilder<>(gameDAO.getNewestGameSummariesByGenre(genre), config)
+                .setFetchExecutor(AppExecutors.getInstance().reads())
+                .build();
+    }
 
-        private GameDAO gameDAO;
+    /**
+     * Pages through the games whose title or genre matches the search, best matches first.
+     *
+     * @param query  search typed by the user, must not be empty
+     * @param config page size, placeholders and prefetch distance of the list
+     * @return Observable paged list of the matching games.
+     * @see GameDAO#searchGameSummaries(String, String, String)
+     */
+    public LiveData<PagedList<GameSummary>> searchGameSummaries(SearchQuery query,
+                                                                PagedList.Config config) {
+        return new LivePagedListBuilder<>(gameDAO.searchGameSummaries(query.getMatch(),
+                query.getPrefixPattern(), query.getContainsPattern()), config)
+                .setFetchExecutor(AppExecutors.getInstance().reads())
+                .build();
+    }
 
-        private DeleteGameAsyncTask(GameDAO gameDAO) {
-            this.gameDAO = gameDAO;
+    /**
+     * Moves the Base64 image of a game into the ImageStore and references it by its hash.
+     * The thumbnail and detail sized variants are created at the same time, so the list and
+     * detail screens never have to decode the original. The Base64 string is dropped once it is
+     * stored, and kept if it could not be stored.
+     * Must be called on a background thread since the image is written to a file.
+     *
+     * @param imageStore store which receives the image
+     * @param game       game whose image is stored
+     */
+    private static void storeImage(ImageStore imageStore, Game game) {
+        if (game.getImage() == null) {
+            return;
         }
 
-        @Override
-        protected Void doInBackground(Game... games) {
-            gameDAO.delete(games[0]);
-            return null;
+        try {
+            String imageHash = imageStore.putBase64(game.getImage());
+            game.setImageHash(imageHash);
+            imageStore.putVariants(imageHash);
+            game.setImage(null);
+        } catch (IOException e) {
+            Log.d("GameRepository", "storeImage: image of " + game.getTitle() + " not stored");
+            e.printStackTrace();
         }
     }
 
     /**
-     * Refresh the games list from the remote database and update the state of the SwipeRefreshLayout
+     * Refresh the games list from the remote database and update the state of the SwipeRefreshLayout.
+     * Only the games which changed since the last committed sync are downloaded. A refresh with
+     * no remote changes receives an empty list and writes nothing.
+     * <p>
+     * The response is streamed and written in batches of {@link #SYNC_BATCH_SIZE} games, each in
+     * its own transaction, so the whole list is never held in memory. Games whose content hash
+     * is unchanged are skipped, so a sync which changes nothing invalidates no observer. The
+     * sync cursor only moves once every batch is committed.
+     * <p>
+     * A refresh which is requested while a sync runs joins that sync, and one which is requested
+     * within {@link #MIN_REFRESH_INTERVAL_MILLIS} of the last sync is skipped.
      *
      * @param swipeRefreshLayout : is passed to the method so that the refreshing animation can be
      *                           canceled once the data is retrieved.
+     * @see SingleFlight
      */
     public void refreshData(final SwipeRefreshLayout swipeRefreshLayout) {
+        refreshData(swipeRefreshLayout, false);
+    }
+
+    /**
+     * Refresh the games list from the remote database, see {@link #refreshData(SwipeRefreshLayout)}
+     *
+     * @param force true to sync even if the last sync is recent. A sync which is running is
+     *              joined all the same.
+     */
+    public void refreshData(final SwipeRefreshLayout swipeRefreshLayout, boolean force) {
 
         Log.d("gameApp", "game reviewer : refreshData() called");
-        executor.execute(new Runnable() {
+        final Runnable stopRefreshing = new Runnable() {
             @Override
             public void run() {
-                webService.getGames().enqueue(new Callback<List<Game>>() {
-                    @Override
-                    public void onResponse(Call<List<Game>> call, Response<List<Game>> response) {
-                        Log.d("GameRepository", "onResponse: GOT CALL FROM REMOTE DB");
-                        List<Game> games = response.body();
-                        assert games != null;
-                        swipeRefreshLayout.setRefreshing(false);
-                        new InsertAllGameAsyncTask(gameDAO).execute(games);
-                    }
-
-                    @Override
-                    public void onFailure(Call<List<Game>> call, Throwable t) {
-                        swipeRefreshLayout.setRefreshing(false);
+                swipeRefreshLayout.setRefreshing(false);
+            }
+        };
+        try {
+            gameSync.run(force, new SingleFlight.Callback<SyncStats>() {
+                @Override
+                public void onComplete(SyncStats result, Exception error) {
+                    if (error != null) {
                         Log.d("gameApp","FAILURE IN DB CALL");
-                        t.printStackTrace();
+                        error.printStackTrace();
                     }
-                });
+                    swipeRefreshLayout.post(stopRefreshing);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Enough syncs are queued already, one of them picks up the changes
+            Log.d("gameApp", "refreshData: sync queue is full");
+            swipeRefreshLayout.post(stopRefreshing);
+        }
+    }
+
+    /**
+     * @return counts of the games syncs which were started, and of the refreshes which joined
+     * or skipped one
+     */
+    public SingleFlight.Stats getRefreshStats() {
+        return gameSync.getStats();
+    }
+
+    /**
+     * Downloads and stores the games which changed since the last sync.
+     * Must be called on a background thread.
+     *
+     * @return counts of the games received, skipped and written
+     */
+    SyncStats syncGames() throws IOException {
+        final Long since = gameDAO.getSyncCursor();
+        Response<ResponseBody> response = webService.getGames(since).execute();
+        Log.d("GameRepository", "syncGames: GOT CALL FROM REMOTE DB");
+        if (!response.isSuccessful() || response.body() == null) {
+            if (response.errorBody() != null) {
+                response.errorBody().close();
+            }
+            throw new IOException("Games request failed with " + response.code());
+        }
+
+        final long[] cursor = {since == null ? 0 : since};
+        final SyncStats stats = new SyncStats();
+        gameIngest.ingest(response.body(), new StreamingIngest.BatchSink<Game>() {
+            @Override
+            public void write(List<Game> batch) {
+                // Unchanged games are not written, so they do not invalidate any observer
+                List<Game> changed = gameDAO.getChanged(batch);
+                for (Game game : changed) {
+                    storeImage(imageStore, game);
+                }
+                int conflicts = 0;
+                if (!changed.isEmpty()) {
+                    conflicts = gameDAO.insertMany(changed);
+                }
+                if (conflicts > 0) {
+                    Log.w("GameRepository", "syncGames: " + conflicts
+                            + " games skipped, their titles belong to other games");
+                }
+                stats.add(batch.size(), changed.size() - conflicts);
+                cursor[0] = nextSyncCursor(cursor[0], batch);
             }
         });
+
+        if (since == null || cursor[0] != since) {
+            gameDAO.setSyncCursor(new SyncCursor(SyncCursor.GAMES, cursor[0]));
+        }
+        lastSyncStats = stats;
+        Log.d("GameRepository", "syncGames: " + stats);
+        return stats;
+    }
+
+    /**
+     * @return counts of the games received, skipped and written by the last completed sync, or
+     * null if no sync has completed yet
+     */
+    public SyncStats getLastSyncStats() {
+        return lastSyncStats;
+    }
+
+    /**
+     * Works out the cursor which follows a batch of synced games: the largest updatedAt sequence
+     * value seen so far.
+     *
+     * @param since cursor the batch was requested with, or null for a full sync
+     * @param games games received from the web service
+     * @return cursor to request the next delta with
+     */
+    static long nextSyncCursor(Long since, List<Game> games) {
+        long cursor = since == null ? 0 : since;
+        for (Game game : games) {
+            cursor = Math.max(cursor, game.getUpdatedAt());
+        }
+        return cursor;
     }
 }
@@ -0,0 +1,86 @@
+package com.ctse.androidgamereviewer.data;
+
+/**
+ * Turns the release date of a game into the number of days since 1 January 1970, which is
+ * stored next to it so games can be sorted and filtered by date in SQL. Dates entered in the
+ * app are written as "January 1 2017" by AddGameActivity, the web service may also send
+ * ISO dates such as "2017-01-01".
+ */
+public final class ReleaseDates {
+
+    private static final String[] MONTHS = {"january", "february", "march", "april", "may",
+            "june", "july", "august", "september", "october", "november", "december"};
+
+    private ReleaseDates() {
+    }
+
+    /**
+     * @param releaseDate release date as stored in the Game table, may be null
+     * @return days since 1 January 1970, or null if the date is missing or not understood
+     */
+    public static Long toEpochDay(String releaseDate) {
+        if (releaseDate == null) {
+            return null;
+        }
+
+        String date = releaseDate.trim();
+        String[] parts = date.split("\\s+");
+        try {
+            if (parts.length == 3) {
+                int month = indexOfMonth(parts[0]);
+                return month < 0 ? null : toEpochDay(Integer.parseInt(parts[2]), month + 1,
+                        Integer.parseInt(parts[1]));
+            }
+            if (date.length() >= 10 && date.charAt(4) == '-' && date.charAt(7) == '-') {
+                return toEpochDay(Integer.parseInt(date.substring(0, 4)),
+                        Integer.parseInt(date.substring(5, 7)),
+                        Integer.parseInt(date.substring(8, 10)));
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * @return days since 1 January 1970 of a date of the Gregorian calendar, or null if there
+     * is no such date
+     */
+    static Long toEpochDay(int year, int month, int day) {
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return null;
+        }
+
+        // Counts from 1 March so the leap day is the last day of the counted year
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int indexOfMonth(String name) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (MONTHS[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
@@ -1,23 +1,31 @@
 package com.ctse.androidgamereviewer.data;
 
 import android.app.Application;
-import android.os.AsyncTask;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.ctse.androidgamereviewer.data.dao.ReviewDAO;
+import com.ctse.androidgamereviewer.data.entities.OutboxEntry;
 import com.ctse.androidgamereviewer.data.entities.Review;
+import com.ctse.androidgamereviewer.data.paging.ReviewDataSource;
+import com.ctse.androidgamereviewer.data.retrofit.ApiClient;
 import com.ctse.androidgamereviewer.data.retrofit.GameWebService;
+import com.ctse.androidgamereviewer.data.sync.OutboxCoalescer;
+import com.ctse.androidgamereviewer.data.sync.OutboxWorker;
+import com.ctse.androidgamereviewer.data.sync.SingleFlight;
+import com.ctse.androidgamereviewer.data.sync.StreamingIngest;
+import com.ctse.androidgamereviewer.data.sync.SyncStats;
 
+import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 import androidx.lifecycle.LiveData;
-import retrofit2.Call;
-import retrofit2.Callback;
+import androidx.paging.LivePagedListBuilder;
+import androidx.paging.PagedList;
+import okhttp3.ResponseBody;
 import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 
 /**
  * The Repository class is the highest level of abstraction for persistent data operations.
@@ -30,6 +38,19 @@ import retrofit2.converter.gson.GsonConverterFactory;
  */
 public class ReviewRepository {
 
+    /**
+     * Number of synced reviews written per transaction
+     */
+    static final int SYNC_BATCH_SIZE = 200;
+    /**
+     * Number of games whose paged reviews are kept, see {@link #getReviewsForGame}
+     */
+    static final int REVIEW_LIST_CACHE_SIZE = 16;
+    /**
+     * Time after a reviews sync during which a refresh which is not forced is skipped
+     */
+    static final long MIN_REFRESH_INTERVAL_MILLIS = 30_000;
+
     /**
      * ReviewDAO is Room Data access object for handling local DB operations
      *
@@ -37,17 +58,35 @@ public class ReviewRepository {
      */
     private ReviewDAO reviewDAO;
     /**
-     * GameWebservice Retrofit webservice for handling remote DB  operations
+     * GameWebservice Retrofit webservice for handling remote DB  operations, shared by the
+     * whole app
      */
     private GameWebService webService;
-    /**
-     * Executor For handling concurrent tasks
-     */
-    private Executor executor;
     /**
      * GameDatabase is a Room Database class which creates instances of Data Access Objects
      */
     private GameDatabase database;
+    /**
+     * Commits the writes of the user in batches, shared by every repository
+     */
+    private WriteBehindBuffer writeBuffer;
+    /**
+     * Parses the reviews response as it is downloaded
+     */
+    private StreamingIngest<Review> reviewIngest;
+    /**
+     * Counters of the last completed reviews sync
+     */
+    private volatile SyncStats lastSyncStats;
+    /**
+     * Runs one reviews sync at a time, shared by every refresh which asks for it meanwhile
+     */
+    private SingleFlight<SyncStats> reviewSync;
+    /**
+     * Paged reviews of recently shown or prefetched games, by the remote id of the game
+     */
+    private final LruCache<String, LiveData<PagedList<Review>>> reviewListCache =
+            new LruCache<>(REVIEW_LIST_CACHE_SIZE);
 
     /**
      * List of games is stored with the LiveData wrapper. LiveData follows the Observer pattern
@@ -61,149 +100,227 @@ public class ReviewRepository {
      */
     private LiveData<List<Review>> allReviews;
 
-    public ReviewRepository(Application application) {
+    private static ReviewRepository instance;
+
+    private ReviewRepository(Application application) {
         database = GameDatabase.getInstance(application);
+        writeBuffer = WriteBehindBuffer.getInstance(database);
         reviewDAO = database.reviewDAO();
 
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl("https://ctse-test-api.herokuapp.com/")
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-        webService = retrofit.create(GameWebService.class);
-        executor = Executors.newSingleThreadExecutor();
+        webService = ApiClient.getWebService();
+        reviewIngest = new StreamingIngest<>(ApiClient.getGson(), Review.class, SYNC_BATCH_SIZE);
 
         allReviews = reviewDAO.getAllReviews();
+        reviewSync = new SingleFlight<>(AppExecutors.getInstance().sync(),
+                new Callable<SyncStats>() {
+                    @Override
+                    public SyncStats call() throws IOException {
+                        return syncReviews();
+                    }
+                }, MIN_REFRESH_INTERVAL_MILLIS);
     }
 
     /**
-     * inserts a new review object into the database. Game is inserted into the local database as
-     * well as the remote database. To avoid blocking the main thread, database operations are
-     * carried out on separate threads. This enables a smooth user experience.
+     * Returns the repository of the app. Every screen shares it, together with its executors and
+     * its LiveData, so opening a screen does not create another copy.
+     */
+    public static synchronized ReviewRepository getInstance(Application application) {
+
+        if (instance == null) {
+            instance = new ReviewRepository(application);
+        }
+
+        return instance;
+    }
+
+    /**
+     * inserts a new review object into the database. Review is inserted into the local database
+     * and queued in the outbox in the same transaction. The outbox is sent to the remote database
+     * in the background and retried until it succeeds, so a review written while offline is not
+     * lost. To avoid blocking the main thread, database operations are carried out on the user
+     * writes lane of {@link AppExecutors}, so they never wait behind a sync, batched with other
+     * writes by the {@link WriteBehindBuffer}.
      *
      * @param review review object to be persisted.
+     * @see OutboxWorker
      */
     public void insert(final Review review) {
-        new InsertReviewAsyncTask(reviewDAO).execute(review);
+        final OutboxEntry entry = new OutboxEntry(OutboxEntry.TYPE_REVIEW,
+                String.valueOf(review.get_id()), OutboxEntry.OPERATION_CREATE,
+                ApiClient.getGson().toJson(review), System.currentTimeMillis());
 
-        executor.execute(new Runnable() {
+        writeBuffer.submit(new WriteBehindBuffer.Write() {
             @Override
-            public void run() {
-                webService.saveReview(review).enqueue(new Callback<Review>() {
-                    @Override
-                    public void onResponse(Call<Review> call, Response<Review> response) {
-                        Log.d("ReviewRepository", "onResponse: Game saved to online DB");
-                    }
+            protected void apply() {
+                reviewDAO.insertReview(review);
+                database.outboxDAO().insert(entry);
+            }
 
-                    @Override
-                    public void onFailure(Call<Review> call, Throwable t) {
-                        Log.d("ReviewRepository", "onResponse: Game not saved");
-                        t.printStackTrace();
-                    }
-                });
+            @Override
+            protected void committed() {
+                OutboxCoalescer.getInstance().onEnqueued();
+            }
+
+            @Override
+            protected void failed(Exception error) {
+                // The buffer has logged the stack trace, this names the review
+                Log.w("ReviewRepository", "insert: review " + review.get_id()
+                        + " was not saved: " + error.getMessage());
             }
         });
     }
 
-    public void update(Review review) {
-        new UpdateReviewAsyncTask(reviewDAO).execute(review);
+    public void update(final Review review) {
+        writeBuffer.submit(new WriteBehindBuffer.Write() {
+            @Override
+            protected void apply() {
+                reviewDAO.update(review);
+            }
+        });
     }
 
-    public void delete(Review review) {
-        new DeleteReviewAsyncTask(reviewDAO).execute(review);
+    public void delete(final Review review) {
+        writeBuffer.submit(new WriteBehindBuffer.Write() {
+            @Override
+            protected void apply() {
+                reviewDAO.delete(review);
+            }
+        });
     }
 
     public LiveData<List<Review>> getAllReviews() {
         return allReviews;
     }
 
-    public LiveData<List<Review>> getReviewsForGame(String game_id) {
-        return database.reviewDAO().getReviewsByGameId(game_id);
+    /**
+     * @return counts of the reviews received, skipped and written by the last completed sync, or
+     * null if no sync has completed yet
+     */
+    public SyncStats getLastSyncStats() {
+        return lastSyncStats;
     }
 
-    private static class InsertReviewAsyncTask extends AsyncTask<Review, Void, Void> {
-
-        private ReviewDAO reviewDAO;
-
-        private InsertReviewAsyncTask(ReviewDAO reviewDAO) {
-            this.reviewDAO = reviewDAO;
-        }
-
-        @Override
-        protected Void doInBackground(Review... reviews) {
-            reviewDAO.insertReview(reviews[0]);
-            return null;
+    /**
+     * Pages through the reviews of a game, newest first. Further pages are appended as the
+     * list scrolls, so opening a game costs one page however many reviews it has.
+     * <p>
+     * The paged lists of recently requested games are kept. A kept list holds the pages it
+     * loaded and is only loaded again once the Review table changed, so a game whose reviews
+     * were prefetched opens without reading the database. Must be called on the main thread.
+     *
+     * @param game_id remote id of the game
+     * @param config  page size and prefetch distance of the list. Placeholders are not
+     *                supported since the reviews are never counted. A kept list keeps the
+     *                config it was created with.
+     * @return Observable paged list of reviews.
+     * @see ReviewDataSource
+     */
+    public LiveData<PagedList<Review>> getReviewsForGame(String game_id, PagedList.Config config) {
+        LiveData<PagedList<Review>> reviews = game_id == null ? null
+                : reviewListCache.get(game_id);
+        if (reviews == null) {
+            reviews = new LivePagedListBuilder<>(new ReviewDataSource.Factory(database, game_id),
+                    config)
+                    .setFetchExecutor(AppExecutors.getInstance().reads())
+                    .build();
+            if (game_id != null) {
+                reviewListCache.put(game_id, reviews);
+            }
         }
+        return reviews;
     }
 
-    private static class InsertAllReviewsAsyncTask extends AsyncTask<List<Review>, Void, Void> {
-
-        private ReviewDAO reviewDAO;
-
-        public InsertAllReviewsAsyncTask(ReviewDAO reviewDAO) {
-            this.reviewDAO = reviewDAO;
-        }
-
-        @Override
-        protected Void doInBackground(List<Review>... lists) {
-            reviewDAO.insertMany(lists[0]);
-            return null;
-        }
+    /**
+     * Pages through the reviews whose title or body matches the search, best matches first.
+     *
+     * @param query  search typed by the user, must not be empty
+     * @param config page size, placeholders and prefetch distance of the list
+     * @return Observable paged list of the matching reviews.
+     * @see ReviewDAO#searchReviews(String, String)
+     */
+    public LiveData<PagedList<Review>> searchReviews(SearchQuery query, PagedList.Config config) {
+        return new LivePagedListBuilder<>(reviewDAO.searchReviews(query.getMatch(),
+                query.getPrefixPattern()), config)
+                .setFetchExecutor(AppExecutors.getInstance().reads())
+                .build();
     }
 
-    private static class UpdateReviewAsyncTask extends AsyncTask<Review, Void, Void> {
-
-        private ReviewDAO reviewDAO;
-
-        private UpdateReviewAsyncTask(ReviewDAO reviewDAO) {
-            this.reviewDAO = reviewDAO;
-        }
-
-        @Override
-        protected Void doInBackground(Review... reviews) {
-            reviewDAO.update(reviews[0]);
-            return null;
-        }
+    /**
+     * Refresh the list of reviews from the remote database.
+     * The response is streamed and written in batches of {@link #SYNC_BATCH_SIZE} reviews, each
+     * in its own transaction, so the whole list is never held in memory. Only the reviews whose
+     * content hash differs from the stored one are written.
+     * <p>
+     * A refresh which is requested while a sync runs joins that sync, so opening the main
+     * screen again does not start another download. One which is requested within
+     * {@link #MIN_REFRESH_INTERVAL_MILLIS} of the last sync is skipped.
+     *
+     * @see SingleFlight
+     */
+    public void refreshReviews() {
+        refreshReviews(false);
     }
 
-    private static class DeleteReviewAsyncTask extends AsyncTask<Review, Void, Void> {
-
-        private ReviewDAO reviewDAO;
-
-        private DeleteReviewAsyncTask(ReviewDAO reviewDAO) {
-            this.reviewDAO = reviewDAO;
+    /**
+     * Refresh the list of reviews from the remote database, see {@link #refreshReviews()}
+     *
+     * @param force true to sync even if the last sync is recent. A sync which is running is
+     *              joined all the same.
+     */
+    public void refreshReviews(boolean force) {
+        try {
+            reviewSync.run(force, new SingleFlight.Callback<SyncStats>() {
+                @Override
+                public void onComplete(SyncStats result, Exception error) {
+                    if (error != null) {
+                        Log.d("ReviewRepository", "onResponse: FAILURE IN DB CALL");
+                        error.printStackTrace();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Enough syncs are queued already, one of them picks up the changes
+            Log.d("ReviewRepository", "refreshReviews: sync queue is full");
         }
+    }
 
-        @Override
-        protected Void doInBackground(Review... reviews) {
-            reviewDAO.delete(reviews[0]);
-            return null;
-        }
+    /**
+     * @return counts of the reviews syncs which were started, and of the refreshes which joined
+     * or skipped one
+     */
+    public SingleFlight.Stats getRefreshStats() {
+        return reviewSync.getStats();
     }
 
     /**
-     * Refresh the list of reviews from the remote database.
+     * Downloads and stores the reviews. Must be called on a background thread.
+     *
+     * @return counts of the reviews received, skipped and written
      */
-    public void refreshReviews() {
-        executor.execute(new Runnable() {
+    private SyncStats syncReviews() throws IOException {
+        Response<ResponseBody> response = webService.getReviews().execute();
+        Log.d("ReviewRepository", "onResponse: GOT CALL FROM REMOTE DB");
+        if (!response.isSuccessful() || response.body() == null) {
+            if (response.errorBody() != null) {
+                response.errorBody().close();
+            }
+            throw new IOException("Reviews request failed with " + response.code());
+        }
+        final SyncStats stats = new SyncStats();
+        reviewIngest.ingest(response.body(), new StreamingIngest.BatchSink<Review>() {
             @Override
-            public void run() {
-                webService.getReviews().enqueue(new Callback<List<Review>>() {
-                    @Override
-                    public void onResponse(Call<List<Review>> call, Response<List<Review>> response) {
-                        Log.d("ReviewRepository", "onResponse: GOT CALL FROM REMOTE DB");
-                        List<Review> reviews = response.body();
-                        assert response != null;
-                        new InsertAllReviewsAsyncTask(reviewDAO).execute(reviews);
-                    }
-
-                    @Override
-                    public void onFailure(Call<List<Review>> call, Throwable t) {
-                        Log.d("ReviewRepository", "onResponse: FAILURE IN DB CALL");
-                        t.printStackTrace();
-                    }
-                });
+            public void write(List<Review> batch) {
+                // Unchanged reviews are not written, so they do not invalidate any observer
+                List<Review> changed = reviewDAO.getChanged(batch);
+                if (!changed.isEmpty()) {
+                    reviewDAO.insertMany(changed);
+                }
+                stats.add(batch.size(), changed.size());
             }
         });
+        lastSyncStats = stats;
+        Log.d("ReviewRepository", "refreshReviews: " + stats);
+        return stats;
     }
 
 }
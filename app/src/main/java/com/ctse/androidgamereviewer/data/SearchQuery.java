@@ -0,0 +1,74 @@
+package com.ctse.androidgamereviewer.data;
+
+import java.util.Locale;
+
+/**
+ * Search text typed by the user, turned into the arguments of the full-text search queries.
+ * Only letters and digits are kept, so the text can never be read as FTS query syntax or as a
+ * LIKE wildcard. Every word matches as a prefix, so results appear while a word is being typed.
+ */
+public final class SearchQuery {
+
+    private final String text;
+    private final String match;
+
+    private SearchQuery(String text, String match) {
+        this.text = text;
+        this.match = match;
+    }
+
+    /**
+     * @param input text as typed, may be null
+     */
+    public static SearchQuery parse(String input) {
+        StringBuilder text = new StringBuilder();
+        StringBuilder match = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        String source = input == null ? "" : input.toLowerCase(Locale.ROOT);
+
+        for (int i = 0; i <= source.length(); i++) {
+            char c = i < source.length() ? source.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                text.append(text.length() == 0 ? "" : " ").append(word);
+                match.append(match.length() == 0 ? "" : " ").append(word).append('*');
+                word.setLength(0);
+            }
+        }
+        return new SearchQuery(text.toString(), match.toString());
+    }
+
+    /**
+     * @return true if the input holds no letter or digit, nothing can be searched
+     */
+    public boolean isEmpty() {
+        return text.isEmpty();
+    }
+
+    /**
+     * @return FTS query which matches rows containing every word, each as a prefix
+     */
+    public String getMatch() {
+        return match;
+    }
+
+    /**
+     * @return LIKE pattern of a column starting with the search text
+     */
+    public String getPrefixPattern() {
+        return text + "%";
+    }
+
+    /**
+     * @return LIKE pattern of a column containing the search text
+     */
+    public String getContainsPattern() {
+        return "%" + text + "%";
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
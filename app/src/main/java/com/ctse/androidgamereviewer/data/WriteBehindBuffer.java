@@ -0,0 +1,349 @@
+package com.ctse.androidgamereviewer.data;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the writes of the repositories and commits them in batches, each in one transaction.
+ * A batch is committed once a short window has passed since its first write, or as soon as it
+ * holds a maximum number of writes. Room notifies observers once per transaction, so a burst of
+ * writes invalidates the observed queries once rather than once per write.
+ * <p>
+ * Writes are applied in the order they were submitted, so the writes of one game or review
+ * are never reordered. This relies on the commit executor running one batch at a time.
+ * If the transaction of a batch fails, each of its writes is applied again in a transaction of
+ * its own, so only the write which failed is lost and the unrelated writes of the batch are
+ * still committed. Every write has its own future, which reports its own failure.
+ * <p>
+ * While the commit executor is full, a full batch stays open and keeps taking writes until the
+ * executor accepts it, so submitting never fails on the calling thread.
+ */
+public class WriteBehindBuffer {
+
+    static final long WINDOW_MILLIS = 50;
+    static final int MAX_WRITES = 100;
+
+    /**
+     * Runs its argument in one database transaction, see
+     * {@link androidx.room.RoomDatabase#runInTransaction(Runnable)}
+     */
+    public interface TransactionRunner {
+
+        void runInTransaction(Runnable body);
+    }
+
+    /**
+     * Runs a task once a delay has passed
+     */
+    interface Scheduler {
+
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * Reports the failures which the buffer recovers from. The buffer logs through this rather
+     * than through android.util.Log directly, so it runs in JVM tests.
+     */
+    interface Logger {
+
+        void debug(String message, Throwable error);
+
+        void error(String message, Throwable error);
+    }
+
+    /**
+     * Logs to logcat under the tag WriteBehindBuffer
+     */
+    static final Logger ANDROID_LOG = new Logger() {
+        @Override
+        public void debug(String message, Throwable error) {
+            Log.d("WriteBehindBuffer", message, error);
+        }
+
+        @Override
+        public void error(String message, Throwable error) {
+            Log.e("WriteBehindBuffer", message, error);
+        }
+    };
+
+    /**
+     * One write of a batch. Only {@link #apply()} runs inside the transaction.
+     */
+    public abstract static class Write {
+
+        private final Result result = new Result();
+
+        /**
+         * Work which is needed by the write but must not hold the transaction open, such as
+         * writing a file. Runs on the commit executor before the transaction begins.
+         */
+        protected void prepare() {
+        }
+
+        /**
+         * Writes to the database. Runs inside the transaction of the batch.
+         */
+        protected abstract void apply();
+
+        /**
+         * Runs once the transaction of the batch is committed
+         */
+        protected void committed() {
+        }
+
+        /**
+         * Runs on the commit executor if the write could not be committed, once the buffer has
+         * logged the failure. The caller of {@link #submit(Write)} is not expected to wait for
+         * the write, so this is where it learns of the failure.
+         */
+        protected void failed(Exception error) {
+        }
+    }
+
+    private static WriteBehindBuffer instance;
+
+    private final TransactionRunner transactions;
+    private final Executor commitExecutor;
+    private final Scheduler timer;
+    private final long windowMillis;
+    private final int maxWrites;
+    private final Logger logger;
+
+    private Batch open;
+    private Future<Void> lastDispatched;
+
+    /**
+     * @param commitExecutor executor which commits the batches, it must run one task at a time
+     * @param timer          dispatches a batch when its window ends
+     * @param logger         reports the failed writes and the rejected batches
+     */
+    WriteBehindBuffer(TransactionRunner transactions, Executor commitExecutor, Scheduler timer,
+                      long windowMillis, int maxWrites, Logger logger) {
+        this.transactions = transactions;
+        this.commitExecutor = commitExecutor;
+        this.timer = timer;
+        this.windowMillis = windowMillis;
+        this.maxWrites = maxWrites;
+        this.logger = logger;
+    }
+
+    /**
+     * Returns the buffer shared by every repository, which commits on the user writes lane of
+     * {@link AppExecutors}.
+     */
+    public static synchronized WriteBehindBuffer getInstance(final GameDatabase database) {
+
+        if (instance == null) {
+            instance = new WriteBehindBuffer(new TransactionRunner() {
+                @Override
+                public void runInTransaction(Runnable body) {
+                    database.runInTransaction(body);
+                }
+            }, new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    AppExecutors.getInstance().userWrites().execute(command);
+                }
+            }, new Scheduler() {
+                @Override
+                public void schedule(Runnable task, long delayMillis) {
+                    AppExecutors.getInstance().timer().schedule(task, delayMillis,
+                            TimeUnit.MILLISECONDS);
+                }
+            }, WINDOW_MILLIS, MAX_WRITES, ANDROID_LOG);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Adds a write to the open batch. A write must only be submitted once.
+     *
+     * @return future which completes once the write is committed, or fails with the exception
+     * which prevented it from being committed
+     */
+    public synchronized Future<?> submit(Write write) {
+        if (open == null) {
+            open = new Batch();
+            scheduleDispatch(open);
+        }
+
+        Batch batch = open;
+        batch.writes.add(write);
+        if (batch.writes.size() >= maxWrites) {
+            try {
+                dispatch(batch);
+            } catch (RejectedExecutionException e) {
+                // The batch stays open, its timer offers it again after another window
+                logger.debug("submit: commit queue is full", e);
+            }
+        }
+        return write.result;
+    }
+
+    /**
+     * Commits the open batch now and waits until every write submitted so far is committed or
+     * has failed. Must not be called on the commit executor.
+     *
+     * @throws ExecutionException if the commit executor failed to run a batch
+     */
+    public void flush() throws InterruptedException, ExecutionException {
+        Future<Void> last;
+        synchronized (this) {
+            if (open != null) {
+                dispatch(open);
+            }
+            last = lastDispatched;
+        }
+
+        if (last != null) {
+            last.get();
+        }
+    }
+
+    /**
+     * Hands the batch to the commit executor, unless it was handed over already.
+     * Must be called while holding the lock of the buffer.
+     */
+    private void dispatch(Batch batch) {
+        if (open != batch) {
+            return;
+        }
+
+        commitExecutor.execute(batch.future);
+        open = null;
+        lastDispatched = batch.future;
+    }
+
+    private void scheduleDispatch(final Batch batch) {
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (WriteBehindBuffer.this) {
+                    try {
+                        dispatch(batch);
+                    } catch (RejectedExecutionException e) {
+                        // The batch stays open and is offered again after another window
+                        logger.debug("dispatch: commit queue is full", e);
+                        scheduleDispatch(batch);
+                    }
+                }
+            }
+        }, windowMillis);
+    }
+
+    /**
+     * Writes which are committed in one transaction
+     */
+    private class Batch {
+
+        private final List<Write> writes = new ArrayList<>();
+        private final FutureTask<Void> future = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() {
+                commit(writes);
+                return null;
+            }
+        });
+    }
+
+    private void commit(List<Write> batch) {
+        final List<Write> writes = new ArrayList<>(batch.size());
+        for (Write write : batch) {
+            try {
+                write.prepare();
+                writes.add(write);
+            } catch (RuntimeException e) {
+                failed(write, e);
+            }
+        }
+
+        try {
+            transactions.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    for (Write write : writes) {
+                        write.apply();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // Isolate the failing write, the others are committed one by one
+            logger.debug("commit: batch of " + writes.size() + " failed", e);
+            for (Write write : writes) {
+                commitAlone(write);
+            }
+            return;
+        }
+
+        for (Write write : writes) {
+            committed(write);
+        }
+    }
+
+    private void commitAlone(final Write write) {
+        try {
+            transactions.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    write.apply();
+                }
+            });
+        } catch (RuntimeException e) {
+            failed(write, e);
+            return;
+        }
+        committed(write);
+    }
+
+    private void committed(Write write) {
+        try {
+            write.committed();
+        } catch (RuntimeException e) {
+            // The write is in the database even if its follow-up work failed
+            logger.error("committed: follow-up of a write failed", e);
+        }
+        write.result.succeed();
+    }
+
+    private void failed(Write write, RuntimeException error) {
+        logger.error("failed: write was not committed", error);
+        try {
+            write.failed(error);
+        } catch (RuntimeException e) {
+            logger.error("failed: failure of a write was not reported", e);
+        }
+        write.result.fail(error);
+    }
+
+    /**
+     * Outcome of one write, completed by the commit executor
+     */
+    private static class Result extends FutureTask<Void> {
+
+        private Result() {
+            super(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }, null);
+        }
+
+        private void succeed() {
+            set(null);
+        }
+
+        private void fail(Throwable error) {
+            setException(error);
+        }
+    }
+}
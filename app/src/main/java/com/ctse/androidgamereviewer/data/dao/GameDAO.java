@@ -1,16 +1,30 @@
 package com.ctse.androidgamereviewer.data.dao;
 
+import android.database.sqlite.SQLiteConstraintException;
+
+import com.ctse.androidgamereviewer.data.ReleaseDates;
 import com.ctse.androidgamereviewer.data.entities.Game;
+import com.ctse.androidgamereviewer.data.entities.GameSummary;
+import com.ctse.androidgamereviewer.data.entities.StoredHash;
+import com.ctse.androidgamereviewer.data.entities.SyncCursor;
+import com.ctse.androidgamereviewer.data.sync.ContentHash;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import androidx.lifecycle.LiveData;
+import androidx.paging.DataSource;
 import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 
+import static androidx.room.OnConflictStrategy.IGNORE;
 import static androidx.room.OnConflictStrategy.REPLACE;
 
 /**
@@ -24,14 +38,133 @@ import static androidx.room.OnConflictStrategy.REPLACE;
 @Dao
 public abstract class GameDAO {
 
-    @Insert(onConflict = REPLACE)
-    public abstract void insertGame(Game game);
+    /**
+     * Inserts a game added in the app, see {@link #insertMany(List)}
+     *
+     * @throws SQLiteConstraintException if another game has the same title
+     */
+    @Transaction
+    public void insertGame(Game game) {
+        if (insertMany(Collections.singletonList(game)) > 0) {
+            throw new SQLiteConstraintException("Another game is titled " + game.getTitle());
+        }
+    }
+
+    /**
+     * Inserts new games and updates the games which already exist in place, matched on their
+     * remote _id. Games added in the app are given their _id when they are created, so a synced
+     * game finds the row it was added as. Unlike a REPLACE, an existing row keeps its local id
+     * and is not deleted and inserted again, so its index entries are only rewritten for the
+     * columns which change.
+     * <p>
+     * Titles are unique, and a game whose title belongs to another stored game is not written.
+     * Neither row is deleted to make room for the other.
+     *
+     * @return number of games which were not written because their title belongs to another
+     * game
+     */
+    @Transaction
+    public int insertMany(List<Game> games) {
+        for (Game game : games) {
+            game.setReleaseEpochDay(ReleaseDates.toEpochDay(game.getRelease_date()));
+        }
+        long[] rowIds = insertRows(games);
+
+        int conflicts = 0;
+        for (int i = 0; i < games.size(); i++) {
+            if (rowIds[i] != -1) {
+                continue;
+            }
+
+            Game game = games.get(i);
+            if (game.get_id() == null || updateByRemoteId(game.get_id(), game.getTitle(),
+                    game.getGenre(), game.getImageHash(), game.getRelease_date(),
+                    game.getReleaseEpochDay(), game.getUpdatedAt(),
+                    game.getContentHash()) == 0) {
+                conflicts++;
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * @return row id of each inserted game, or -1 for a game which already exists
+     */
+    @Insert(onConflict = IGNORE)
+    abstract long[] insertRows(List<Game> games);
+
+    /**
+     * Updates the game with the given remote id. The update is skipped if another row already
+     * holds the new title.
+     *
+     * @return number of updated rows, 0 if there is no such game or its title is taken
+     */
+    @Query("UPDATE OR IGNORE Game SET game_title = :title, genre = :genre, "
+            + "image_hash = :imageHash, release_date = :releaseDate, "
+            + "release_epoch_day = :releaseEpochDay, updated_at = :updatedAt, "
+            + "content_hash = :contentHash WHERE _id = :remoteId")
+    abstract int updateByRemoteId(String remoteId, String title, String genre, String imageHash,
+                                  String releaseDate, Long releaseEpochDay, long updatedAt,
+                                  long contentHash);
+
+    /**
+     * Fingerprints games received from the web service and drops the ones which are stored
+     * with the same fingerprint already. Must be called before the Base64 images are released,
+     * since they are part of the fingerprint.
+     *
+     * @param games games received from the web service
+     * @return the games which are new or differ from the stored ones
+     * @see ContentHash
+     */
+    public List<Game> getChanged(List<Game> games) {
+        List<String> remoteIds = new ArrayList<>(games.size());
+        for (Game game : games) {
+            game.setContentHash(ContentHash.of(game));
+            if (game.get_id() != null) {
+                remoteIds.add(game.get_id());
+            }
+        }
+
+        Map<String, Long> stored = new HashMap<>();
+        for (StoredHash hash : getContentHashes(remoteIds)) {
+            stored.put(hash.getRemoteId(), hash.getContentHash());
+        }
+
+        List<Game> changed = new ArrayList<>();
+        for (Game game : games) {
+            Long hash = stored.get(game.get_id());
+            if (hash == null || hash != game.getContentHash()) {
+                changed.add(game);
+            }
+        }
+        return changed;
+    }
 
+    @Query("SELECT _id AS remote_id, content_hash FROM Game WHERE _id IN (:remoteIds)")
+    abstract List<StoredHash> getContentHashes(List<String> remoteIds);
+
+    /**
+     * Moves the sync cursor. Must only be called once every game of the delta it follows is
+     * committed, so an interrupted sync requests the same delta again.
+     */
     @Insert(onConflict = REPLACE)
-    public abstract void insertMany(List<Game> games);
+    public abstract void setSyncCursor(SyncCursor cursor);
+
+    /**
+     * @return cursor of the last committed games sync, or null if the games were never synced
+     */
+    @Query("SELECT cursor FROM SyncCursor WHERE resource = '" + SyncCursor.GAMES + "'")
+    public abstract Long getSyncCursor();
+
+    public void update(Game game) {
+        // A local edit no longer matches the synced content, so the next sync rewrites it
+        game.setContentHash(0);
+        game.setReleaseEpochDay(ReleaseDates.toEpochDay(game.getRelease_date()));
+        updateRow(game);
+    }
 
     @Update
-    public abstract void update(Game game);
+    abstract void updateRow(Game game);
 
     @Delete
     public abstract void delete(Game game);
@@ -39,7 +172,93 @@ public abstract class GameDAO {
     @Query("SELECT * FROM Game WHERE id =:id")
     public abstract Game getGame(int id);
 
-    @Query("SELECT * FROM Game")
-    public abstract LiveData<List<Game>> getAllGames();
+    /**
+     * Observes one game, read through the unique index on its remote id. The LiveData holds
+     * null while no game has the id.
+     */
+    @Query("SELECT * FROM Game WHERE _id = :remoteId")
+    public abstract LiveData<Game> getGameByRemoteId(String remoteId);
+
+    /**
+     * Paged projection of the Game table used by the game list. Only the columns shown in the
+     * list are read, and only for the pages which are loaded. The rating of each game is joined
+     * in from its GameRating aggregate.
+     */
+    @Query("SELECT Game.id, Game._id, game_title, genre, image_hash, "
+            + "IFNULL(review_count, 0) AS review_count, "
+            + "IFNULL(average_rating, 0) AS average_rating "
+            + "FROM Game LEFT JOIN GameRating ON GameRating.gameId = Game._id ORDER BY Game.id")
+    public abstract DataSource.Factory<Integer, GameSummary> getGameSummaries();
+
+    /**
+     * Paged projection of the rated games, best rated first. The order is read from the index on
+     * GameRating average_rating and gameId, so no ratings are aggregated or sorted at query time.
+     * Games with the same rating are ordered by their id, so the pages of the list do not
+     * overlap.
+     */
+    @Query("SELECT Game.id, Game._id, game_title, genre, image_hash, review_count, "
+            + "average_rating FROM GameRating INNER JOIN Game ON Game._id = GameRating.gameId "
+            + "ORDER BY average_rating DESC, GameRating.gameId DESC")
+    public abstract DataSource.Factory<Integer, GameSummary> getTopRatedGameSummaries();
+
+    /**
+     * Paged projection of the games, newest release first. The order is read backwards from the
+     * index on release_epoch_day, so the catalogue is not sorted at query time. Games whose
+     * release date is not understood come last.
+     */
+    @Query("SELECT Game.id, Game._id, game_title, genre, image_hash, "
+            + "IFNULL(review_count, 0) AS review_count, "
+            + "IFNULL(average_rating, 0) AS average_rating "
+            + "FROM Game LEFT JOIN GameRating ON GameRating.gameId = Game._id "
+            + "ORDER BY release_epoch_day DESC, Game.id DESC")
+    public abstract DataSource.Factory<Integer, GameSummary> getNewestGameSummaries();
+
+    /**
+     * Paged projection of the games released between two days, both included, newest first.
+     * Only the range of the index on release_epoch_day is read.
+     *
+     * @param fromEpochDay first day of the range, see {@link ReleaseDates}
+     * @param toEpochDay   last day of the range
+     */
+    @Query("SELECT Game.id, Game._id, game_title, genre, image_hash, "
+            + "IFNULL(review_count, 0) AS review_count, "
+            + "IFNULL(average_rating, 0) AS average_rating "
+            + "FROM Game LEFT JOIN GameRating ON GameRating.gameId = Game._id "
+            + "WHERE release_epoch_day BETWEEN :fromEpochDay AND :toEpochDay "
+            + "ORDER BY release_epoch_day DESC, Game.id DESC")
+    public abstract DataSource.Factory<Integer, GameSummary> getGameSummariesReleasedBetween(
+            long fromEpochDay, long toEpochDay);
+
+    /**
+     * Paged projection of the games of one genre, newest release first. The games of the genre
+     * are read in order from the index on genre and release_epoch_day.
+     */
+    @Query("SELECT Game.id, Game._id, game_title, genre, image_hash, "
+            + "IFNULL(review_count, 0) AS review_count, "
+            + "IFNULL(average_rating, 0) AS average_rating "
+            + "FROM Game LEFT JOIN GameRating ON GameRating.gameId = Game._id "
+            + "WHERE genre = :genre ORDER BY release_epoch_day DESC, Game.id DESC")
+    public abstract DataSource.Factory<Integer, GameSummary> getNewestGameSummariesByGenre(
+            String genre);
+
+    /**
+     * Paged full-text search over the title and genre of the games, read from the GameFts
+     * index. Games whose title starts with the search text are ranked first, then games whose
+     * title contains it, then games which match on their genre or on words apart in the title.
+     *
+     * @param match    FTS query, see {@link com.ctse.androidgamereviewer.data.SearchQuery}
+     * @param prefix   LIKE pattern of a title starting with the search text
+     * @param contains LIKE pattern of a title containing the search text
+     */
+    @Query("SELECT Game.id, Game._id, Game.game_title, Game.genre, image_hash, "
+            + "IFNULL(review_count, 0) AS review_count, "
+            + "IFNULL(average_rating, 0) AS average_rating "
+            + "FROM GameFts INNER JOIN Game ON Game.id = GameFts.rowid "
+            + "LEFT JOIN GameRating ON GameRating.gameId = Game._id "
+            + "WHERE GameFts MATCH :match "
+            + "ORDER BY CASE WHEN Game.game_title LIKE :prefix THEN 0 "
+            + "WHEN Game.game_title LIKE :contains THEN 1 ELSE 2 END, Game.game_title")
+    public abstract DataSource.Factory<Integer, GameSummary> searchGameSummaries(
+            String match, String prefix, String contains);
 
 }
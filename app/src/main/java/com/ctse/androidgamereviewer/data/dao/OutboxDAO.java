@@ -0,0 +1,57 @@
+package com.ctse.androidgamereviewer.data.dao;
+
+import com.ctse.androidgamereviewer.data.entities.OutboxEntry;
+
+import java.util.List;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Delete;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Update;
+
+/**
+ * OutboxDAO gives access to the writes which still have to be sent to the web service.
+ *
+ * @see Dao
+ * <a href="https://developer.android.com/topic/libraries/architecture/room">
+ * Official Room Documentation</a>
+ */
+@Dao
+public abstract class OutboxDAO {
+
+    @Insert
+    public abstract long insert(OutboxEntry entry);
+
+    @Update
+    public abstract void update(OutboxEntry entry);
+
+    @Delete
+    public abstract void delete(OutboxEntry entry);
+
+    /**
+     * Entries which are due to be sent. Only the oldest entry of each entity is returned, so a
+     * later write of an entity is never sent before an earlier one which is still failing.
+     *
+     * @param now   current time in milliseconds
+     * @param limit largest number of entries to return
+     */
+    @Query("SELECT * FROM Outbox AS entry WHERE next_attempt_at <= :now "
+            + "AND id = (SELECT MIN(id) FROM Outbox WHERE entity_type = entry.entity_type "
+            + "AND entity_key = entry.entity_key) "
+            + "ORDER BY id LIMIT :limit")
+    public abstract List<OutboxEntry> getReady(long now, int limit);
+
+    /**
+     * @return time of the earliest retry, or null if the outbox is empty
+     */
+    @Query("SELECT MIN(next_attempt_at) FROM Outbox")
+    public abstract Long getNextAttemptAt();
+
+    /**
+     * @return Observable number of writes which have not been confirmed by the web service
+     */
+    @Query("SELECT COUNT(*) FROM Outbox")
+    public abstract LiveData<Integer> getPendingCount();
+}
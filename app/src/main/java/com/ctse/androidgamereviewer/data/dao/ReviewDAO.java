@@ -1,21 +1,34 @@
 package com.ctse.androidgamereviewer.data.dao;
 
+import com.ctse.androidgamereviewer.data.entities.GameRating;
 import com.ctse.androidgamereviewer.data.entities.Review;
+import com.ctse.androidgamereviewer.data.entities.StoredHash;
+import com.ctse.androidgamereviewer.data.sync.ContentHash;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import androidx.lifecycle.LiveData;
+import androidx.paging.DataSource;
 import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 
-import static androidx.room.OnConflictStrategy.REPLACE;
+import static androidx.room.OnConflictStrategy.IGNORE;
 
 /**
  * GameDAO includes methods that offer abstract access to the game database.
  * The room framework creates an implementation of the GameDAO at runtime.
+ * <p>
+ * Every write keeps the per game GameRating aggregate up to date in the same transaction. The
+ * aggregate is adjusted by the difference each write makes instead of being recomputed from
+ * all reviews of the game.
  *
  * @see Dao
  * <a href="https://developer.android.com/topic/libraries/architecture/room">
@@ -24,22 +37,284 @@ import static androidx.room.OnConflictStrategy.REPLACE;
 @Dao
 public abstract class ReviewDAO {
 
-    @Insert(onConflict = REPLACE)
-    public abstract void insertReview(Review review);
+    @Transaction
+    public void insertReview(Review review) {
+        insertMany(Collections.singletonList(review));
+    }
 
-    @Insert(onConflict = REPLACE)
-    public abstract void insertMany(List<Review> reviews);
+    /**
+     * Inserts new reviews, updates the reviews which already exist in place, matched on their
+     * remote id, and applies the rating changes to GameRating. A review which updates an
+     * existing one first takes back the rating of the old row.
+     */
+    @Transaction
+    public void insertMany(List<Review> reviews) {
+        Map<String, RatingDelta> deltas = new HashMap<>();
+        Map<String, Review> inserted = new HashMap<>();
+
+        for (Review review : reviews) {
+            requireDate(review);
+            Review previous = null;
+            if (review.get_id() != null) {
+                previous = inserted.containsKey(review.get_id())
+                        ? inserted.get(review.get_id())
+                        : getReviewByRemoteId(review.get_id());
+                inserted.put(review.get_id(), review);
+            }
+
+            if (previous != null) {
+                RatingDelta.add(deltas, previous, -1);
+            }
+            RatingDelta.add(deltas, review, 1);
+        }
+
+        long[] rowIds = insertReviewRows(reviews);
+        for (int i = 0; i < reviews.size(); i++) {
+            if (rowIds[i] == -1) {
+                Review review = reviews.get(i);
+                updateByRemoteId(review.get_id(), review.getGameId(), review.getTitle(),
+                        review.getBody(), review.getDate(), review.getRating(),
+                        review.getContentHash());
+            }
+        }
+        applyRatingDeltas(deltas);
+    }
+
+    @Transaction
+    public void update(Review review) {
+        Map<String, RatingDelta> deltas = new HashMap<>();
+        Review old = getReview(review.getId());
+        if (old == null) {
+            return;
+        }
+
+        requireDate(review);
+        RatingDelta.add(deltas, old, -1);
+        RatingDelta.add(deltas, review, 1);
+        // A local edit no longer matches the synced content, so the next sync rewrites it
+        review.setContentHash(0);
+        updateRow(review);
+        applyRatingDeltas(deltas);
+    }
+
+    @Transaction
+    public void delete(Review review) {
+        Map<String, RatingDelta> deltas = new HashMap<>();
+        Review old = getReview(review.getId());
+        if (old == null) {
+            return;
+        }
+
+        RatingDelta.add(deltas, old, -1);
+        deleteRow(old);
+        applyRatingDeltas(deltas);
+    }
+
+    /**
+     * Gives a review without a date an empty one, as the date column is NOT NULL. Synced reviews
+     * are read by Gson, which sets a missing date to null.
+     */
+    private static void requireDate(Review review) {
+        if (review.getDate() == null) {
+            review.setDate("");
+        }
+    }
+
+    /**
+     * @return row id of each inserted review, or -1 for a review which already exists
+     */
+    @Insert(onConflict = IGNORE)
+    abstract long[] insertReviewRows(List<Review> reviews);
+
+    /**
+     * Updates an existing review in place, so it keeps its local id.
+     */
+    @Query("UPDATE Review SET gameId = :gameId, title = :title, body = :body, date = :date, "
+            + "rating = :rating, content_hash = :contentHash WHERE remote_id = :remoteId")
+    abstract int updateByRemoteId(String remoteId, String gameId, String title, String body,
+                                  String date, int rating, long contentHash);
+
+    /**
+     * Fingerprints reviews received from the web service and drops the ones which are stored
+     * with the same fingerprint already.
+     *
+     * @param reviews reviews received from the web service
+     * @return the reviews which are new or differ from the stored ones
+     * @see ContentHash
+     */
+    public List<Review> getChanged(List<Review> reviews) {
+        List<String> remoteIds = new ArrayList<>(reviews.size());
+        for (Review review : reviews) {
+            review.setContentHash(ContentHash.of(review));
+            if (review.get_id() != null) {
+                remoteIds.add(review.get_id());
+            }
+        }
+
+        Map<String, Long> stored = new HashMap<>();
+        for (StoredHash hash : getContentHashes(remoteIds)) {
+            stored.put(hash.getRemoteId(), hash.getContentHash());
+        }
+
+        List<Review> changed = new ArrayList<>();
+        for (Review review : reviews) {
+            Long hash = stored.get(review.get_id());
+            if (hash == null || hash != review.getContentHash()) {
+                changed.add(review);
+            }
+        }
+        return changed;
+    }
+
+    @Query("SELECT remote_id, content_hash FROM Review WHERE remote_id IN (:remoteIds)")
+    abstract List<StoredHash> getContentHashes(List<String> remoteIds);
 
     @Update
-    public abstract void update(Review review);
+    abstract void updateRow(Review review);
 
     @Delete
-    public abstract void delete(Review review);
+    abstract void deleteRow(Review review);
+
+    @Query("SELECT * FROM Review WHERE id = :id")
+    abstract Review getReview(int id);
+
+    @Query("SELECT * FROM Review WHERE remote_id = :remoteId")
+    abstract Review getReviewByRemoteId(String remoteId);
+
+    @Insert(onConflict = IGNORE)
+    abstract void insertGameRating(GameRating gameRating);
+
+    /**
+     * Adds the given differences to the aggregate of a game and recomputes its average.
+     */
+    @Query("UPDATE GameRating SET review_count = review_count + :count, "
+            + "rating_sum = rating_sum + :sum, "
+            + "stars_1 = stars_1 + :stars1, stars_2 = stars_2 + :stars2, "
+            + "stars_3 = stars_3 + :stars3, stars_4 = stars_4 + :stars4, "
+            + "stars_5 = stars_5 + :stars5, "
+            + "average_rating = IFNULL(CAST(rating_sum + :sum AS REAL) "
+            + "/ NULLIF(review_count + :count, 0), 0) "
+            + "WHERE gameId = :gameId")
+    abstract void updateGameRating(String gameId, int count, int sum, int stars1, int stars2,
+                                   int stars3, int stars4, int stars5);
+
+    /**
+     * Removes the aggregate of a game whose last review was deleted, so the game is no longer
+     * listed among the rated games.
+     */
+    @Query("DELETE FROM GameRating WHERE gameId = :gameId AND review_count <= 0")
+    abstract void deleteEmptyGameRating(String gameId);
+
+    @Query("SELECT * FROM GameRating WHERE gameId = :gameId")
+    public abstract LiveData<GameRating> getGameRating(String gameId);
+
+    /**
+     * Helper method to write the accumulated rating changes, one statement per game.
+     */
+    private void applyRatingDeltas(Map<String, RatingDelta> deltas) {
+        for (Map.Entry<String, RatingDelta> entry : deltas.entrySet()) {
+            RatingDelta delta = entry.getValue();
+            if (delta.isEmpty()) {
+                continue;
+            }
+            insertGameRating(new GameRating(entry.getKey()));
+            updateGameRating(entry.getKey(), delta.count, delta.sum, delta.stars[0],
+                    delta.stars[1], delta.stars[2], delta.stars[3], delta.stars[4]);
+            if (delta.count < 0) {
+                deleteEmptyGameRating(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Change which a batch of writes makes to the rating aggregate of one game
+     */
+    private static class RatingDelta {
+
+        private int count;
+        private int sum;
+        private final int[] stars = new int[5];
+
+        /**
+         * Adds (sign 1) or takes back (sign -1) the rating of a review.
+         */
+        private static void add(Map<String, RatingDelta> deltas, Review review, int sign) {
+            if (review.getGameId() == null) {
+                return;
+            }
+
+            RatingDelta delta = deltas.get(review.getGameId());
+            if (delta == null) {
+                delta = new RatingDelta();
+                deltas.put(review.getGameId(), delta);
+            }
+
+            delta.count += sign;
+            delta.sum += sign * review.getRating();
+            if (review.getRating() >= 1 && review.getRating() <= 5) {
+                delta.stars[review.getRating() - 1] += sign;
+            }
+        }
+
+        private boolean isEmpty() {
+            if (count != 0 || sum != 0) {
+                return false;
+            }
+            for (int star : stars) {
+                if (star != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * First page of reviews of a game, newest first.
+     */
+    @Query("SELECT * FROM Review WHERE gameId = :gameId ORDER BY date DESC, id DESC LIMIT :limit")
+    public abstract List<Review> getReviewsByGameId(String gameId, int limit);
+
+    /**
+     * Page of reviews starting at the review with the given date and id, newest first.
+     * The (date, id) pair is used as a keyset cursor so that pages deep into the list cost the
+     * same as the first one, unlike an OFFSET which has to skip every earlier row.
+     */
+    @Query("SELECT * FROM Review WHERE gameId = :gameId "
+            + "AND (date < :date OR (date = :date AND id <= :id)) "
+            + "ORDER BY date DESC, id DESC LIMIT :limit")
+    public abstract List<Review> getReviewsFrom(String gameId, String date, int id, int limit);
+
+    /**
+     * Page of reviews older than the review with the given date and id, newest first.
+     */
+    @Query("SELECT * FROM Review WHERE gameId = :gameId "
+            + "AND (date < :date OR (date = :date AND id < :id)) "
+            + "ORDER BY date DESC, id DESC LIMIT :limit")
+    public abstract List<Review> getReviewsAfter(String gameId, String date, int id, int limit);
 
-    @Query("SELECT * FROM Review WHERE gameId =:gameId")
-    public abstract LiveData<List<Review>> getReviewsByGameId(String gameId);
+    /**
+     * Page of reviews newer than the review with the given date and id, oldest first.
+     */
+    @Query("SELECT * FROM Review WHERE gameId = :gameId "
+            + "AND (date > :date OR (date = :date AND id > :id)) "
+            + "ORDER BY date ASC, id ASC LIMIT :limit")
+    public abstract List<Review> getReviewsBefore(String gameId, String date, int id, int limit);
 
     @Query("SELECT * FROM Review")
     public abstract LiveData<List<Review>> getAllReviews();
 
+    /**
+     * Paged full-text search over the title and body of the reviews, read from the ReviewFts
+     * index. Reviews whose title starts with the search text are ranked first, newest first
+     * within each rank.
+     *
+     * @param match  FTS query, see {@link com.ctse.androidgamereviewer.data.SearchQuery}
+     * @param prefix LIKE pattern of a title starting with the search text
+     */
+    @Query("SELECT Review.* FROM ReviewFts INNER JOIN Review ON Review.id = ReviewFts.rowid "
+            + "WHERE ReviewFts MATCH :match "
+            + "ORDER BY CASE WHEN Review.title LIKE :prefix THEN 0 ELSE 1 END, "
+            + "Review.date DESC, Review.id DESC")
+    public abstract DataSource.Factory<Integer, Review> searchReviews(String match, String prefix);
 }
@@ -2,6 +2,7 @@ package com.ctse.androidgamereviewer.data.entities;
 
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Ignore;
 import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
@@ -13,7 +14,10 @@ import androidx.room.PrimaryKey;
  * <a href="https://developer.android.com/topic/libraries/architecture/room">
  * Official Room Documentation</a>
  */
-@Entity(indices = {@Index(value = {"game_title"}, unique = true)})
+@Entity(indices = {@Index(value = {"game_title"}, unique = true),
+        @Index(value = {"_id"}, unique = true),
+        @Index(value = {"release_epoch_day"}),
+        @Index(value = {"genre", "release_epoch_day"})})
 public class Game {
 
     @PrimaryKey(autoGenerate = true)
@@ -23,8 +27,36 @@ public class Game {
     @ColumnInfo(name = "game_title")
     private String title;
     private String genre;
+    /**
+     * Base64 encoded cover image as exchanged with the web service. It is never stored in the
+     * Game table, the image is kept in the ImageStore and referenced by imageHash instead.
+     */
+    @Ignore
     private String image;
+    @ColumnInfo(name = "image_hash")
+    private String imageHash;
     private String release_date;
+    /**
+     * Release date as days since 1 January 1970, or null if release_date is not understood.
+     * It is derived from release_date when the game is written, see
+     * {@link com.ctse.androidgamereviewer.data.ReleaseDates}.
+     */
+    @LocalOnly
+    @ColumnInfo(name = "release_epoch_day")
+    private Long releaseEpochDay;
+    /**
+     * Sequence value the web service assigned to the last change of the game, used as the
+     * delta sync cursor.
+     */
+    @LocalOnly
+    @ColumnInfo(name = "updated_at")
+    private long updatedAt;
+    /**
+     * Fingerprint of the synced columns, compared on the next sync to skip unchanged games
+     */
+    @LocalOnly
+    @ColumnInfo(name = "content_hash")
+    private long contentHash;
 
     public Game() {
     }
@@ -69,6 +101,14 @@ public class Game {
         this.image = image;
     }
 
+    public String getImageHash() {
+        return imageHash;
+    }
+
+    public void setImageHash(String imageHash) {
+        this.imageHash = imageHash;
+    }
+
     public String getRelease_date() {
         return release_date;
     }
@@ -76,4 +116,28 @@ public class Game {
     public void setRelease_date(String release_date) {
         this.release_date = release_date;
     }
-}
\ No newline at end of file
+
+    public Long getReleaseEpochDay() {
+        return releaseEpochDay;
+    }
+
+    public void setReleaseEpochDay(Long releaseEpochDay) {
+        this.releaseEpochDay = releaseEpochDay;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(long contentHash) {
+        this.contentHash = contentHash;
+    }
+}
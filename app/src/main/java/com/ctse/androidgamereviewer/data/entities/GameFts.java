@@ -0,0 +1,43 @@
+package com.ctse.androidgamereviewer.data.entities;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+
+/**
+ * Full-text index over the title and genre of every game. The index keeps no copy of the text,
+ * it reads it from the Game table, and Room keeps it up to date with triggers on Game. The rowid
+ * of each entry is the id of its game.
+ * <p>
+ * See <a href="https://www.sqlite.org/fts3.html">SQLite FTS3 and FTS4 extensions</a> for more
+ * information.
+ *
+ * @see com.ctse.androidgamereviewer.data.dao.GameDAO#searchGameSummaries(String, String, String)
+ */
+@Fts4(contentEntity = Game.class)
+@Entity(tableName = "GameFts")
+public class GameFts {
+
+    @ColumnInfo(name = "game_title")
+    private String title;
+    private String genre;
+
+    public GameFts() {
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getGenre() {
+        return genre;
+    }
+
+    public void setGenre(String genre) {
+        this.genre = genre;
+    }
+}
@@ -0,0 +1,120 @@
+package com.ctse.androidgamereviewer.data.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Per game aggregate of the Review table holding the number of reviews, the sum of their
+ * ratings and a histogram of the 1 to 5 star ratings.
+ * The aggregate is updated by ReviewDAO in the same transaction as every review write, so the
+ * rating of a game can be shown and sorted on without reading any of its reviews.
+ *
+ * @see com.ctse.androidgamereviewer.data.dao.ReviewDAO
+ */
+@Entity(indices = {@Index(value = {"average_rating", "gameId"})})
+public class GameRating {
+
+    @PrimaryKey
+    @NonNull
+    private String gameId;
+
+    @ColumnInfo(name = "review_count")
+    private int reviewCount;
+    @ColumnInfo(name = "rating_sum")
+    private int ratingSum;
+    @ColumnInfo(name = "stars_1")
+    private int stars1;
+    @ColumnInfo(name = "stars_2")
+    private int stars2;
+    @ColumnInfo(name = "stars_3")
+    private int stars3;
+    @ColumnInfo(name = "stars_4")
+    private int stars4;
+    @ColumnInfo(name = "stars_5")
+    private int stars5;
+    /**
+     * rating_sum / review_count, stored so that games can be sorted by rating using an index
+     */
+    @ColumnInfo(name = "average_rating")
+    private double averageRating;
+
+    public GameRating(@NonNull String gameId) {
+        this.gameId = gameId;
+    }
+
+    @NonNull
+    public String getGameId() {
+        return gameId;
+    }
+
+    public void setGameId(@NonNull String gameId) {
+        this.gameId = gameId;
+    }
+
+    public int getReviewCount() {
+        return reviewCount;
+    }
+
+    public void setReviewCount(int reviewCount) {
+        this.reviewCount = reviewCount;
+    }
+
+    public int getRatingSum() {
+        return ratingSum;
+    }
+
+    public void setRatingSum(int ratingSum) {
+        this.ratingSum = ratingSum;
+    }
+
+    public int getStars1() {
+        return stars1;
+    }
+
+    public void setStars1(int stars1) {
+        this.stars1 = stars1;
+    }
+
+    public int getStars2() {
+        return stars2;
+    }
+
+    public void setStars2(int stars2) {
+        this.stars2 = stars2;
+    }
+
+    public int getStars3() {
+        return stars3;
+    }
+
+    public void setStars3(int stars3) {
+        this.stars3 = stars3;
+    }
+
+    public int getStars4() {
+        return stars4;
+    }
+
+    public void setStars4(int stars4) {
+        this.stars4 = stars4;
+    }
+
+    public int getStars5() {
+        return stars5;
+    }
+
+    public void setStars5(int stars5) {
+        this.stars5 = stars5;
+    }
+
+    public double getAverageRating() {
+        return averageRating;
+    }
+
+    public void setAverageRating(double averageRating) {
+        this.averageRating = averageRating;
+    }
+}
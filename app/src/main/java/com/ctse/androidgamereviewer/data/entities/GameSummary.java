@@ -0,0 +1,106 @@
+package com.ctse.androidgamereviewer.data.entities;
+
+import androidx.core.util.ObjectsCompat;
+import androidx.room.ColumnInfo;
+
+/**
+ * Lightweight projection of the Game entity holding only the columns shown in the game list.
+ * Room maps the result of a projection query directly onto this POJO, so the list does not
+ * materialize the release date of every game. The image is only referenced by its hash and its
+ * thumbnail is loaded from the ImageStore. The rating is joined in from the GameRating aggregate.
+ *
+ * @see com.ctse.androidgamereviewer.data.dao.GameDAO#getGameSummaries()
+ */
+public class GameSummary {
+
+    private int id;
+
+    private String _id;
+    @ColumnInfo(name = "game_title")
+    private String title;
+    private String genre;
+    @ColumnInfo(name = "image_hash")
+    private String imageHash;
+    @ColumnInfo(name = "review_count")
+    private int reviewCount;
+    @ColumnInfo(name = "average_rating")
+    private double averageRating;
+
+    public GameSummary() {
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String get_id() {
+        return _id;
+    }
+
+    public void set_id(String _id) {
+        this._id = _id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getGenre() {
+        return genre;
+    }
+
+    public void setGenre(String genre) {
+        this.genre = genre;
+    }
+
+    public String getImageHash() {
+        return imageHash;
+    }
+
+    public void setImageHash(String imageHash) {
+        this.imageHash = imageHash;
+    }
+
+    public int getReviewCount() {
+        return reviewCount;
+    }
+
+    public void setReviewCount(int reviewCount) {
+        this.reviewCount = reviewCount;
+    }
+
+    public double getAverageRating() {
+        return averageRating;
+    }
+
+    public void setAverageRating(double averageRating) {
+        this.averageRating = averageRating;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GameSummary that = (GameSummary) o;
+        return id == that.id
+                && reviewCount == that.reviewCount
+                && Double.compare(averageRating, that.averageRating) == 0
+                && ObjectsCompat.equals(_id, that._id)
+                && ObjectsCompat.equals(title, that.title)
+                && ObjectsCompat.equals(genre, that.genre)
+                && ObjectsCompat.equals(imageHash, that.imageHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return ObjectsCompat.hash(id, _id, title, genre, imageHash, reviewCount, averageRating);
+    }
+}
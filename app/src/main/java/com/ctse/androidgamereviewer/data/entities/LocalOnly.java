@@ -0,0 +1,17 @@
+package com.ctse.androidgamereviewer.data.entities;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field which the app keeps for itself, such as a value derived from other columns.
+ * It is read from JSON if present but never written, so it is not sent to the web service.
+ *
+ * @see com.ctse.androidgamereviewer.data.retrofit.ApiClient#getGson()
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface LocalOnly {
+}
@@ -0,0 +1,149 @@
+package com.ctse.androidgamereviewer.data.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A write to the web service which has not been confirmed yet. Writes made in the app are
+ * stored here in the same transaction as the local change and removed once the web service
+ * accepted them, so a write survives going offline and the process being killed.
+ * <p>
+ * Entries of the same entity are sent in the order of their id.
+ *
+ * @see com.ctse.androidgamereviewer.data.sync.OutboxDrainer
+ */
+@Entity(tableName = "Outbox",
+        indices = {@Index(value = {"entity_type", "entity_key", "id"}),
+                @Index(value = {"next_attempt_at"})})
+public class OutboxEntry {
+
+    public static final String TYPE_GAME = "game";
+    public static final String TYPE_REVIEW = "review";
+
+    public static final String OPERATION_CREATE = "create";
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    /**
+     * Kind of entity the write belongs to, one of the TYPE constants
+     */
+    @ColumnInfo(name = "entity_type")
+    @NonNull
+    private String entityType;
+    /**
+     * Remote id of the entity, which keeps the writes of one entity in order
+     */
+    @ColumnInfo(name = "entity_key")
+    @NonNull
+    private String entityKey;
+    @NonNull
+    private String operation;
+    /**
+     * JSON body sent to the web service
+     */
+    @NonNull
+    private String payload;
+    /**
+     * Number of failed attempts so far
+     */
+    private int attempts;
+    /**
+     * Time in milliseconds before which the entry is not sent again
+     */
+    @ColumnInfo(name = "next_attempt_at")
+    private long nextAttemptAt;
+    @ColumnInfo(name = "created_at")
+    private long createdAt;
+    @ColumnInfo(name = "last_error")
+    private String lastError;
+
+    public OutboxEntry(@NonNull String entityType, @NonNull String entityKey,
+                       @NonNull String operation, @NonNull String payload, long createdAt) {
+        this.entityType = entityType;
+        this.entityKey = entityKey;
+        this.operation = operation;
+        this.payload = payload;
+        this.createdAt = createdAt;
+        this.nextAttemptAt = createdAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    @NonNull
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public void setEntityType(@NonNull String entityType) {
+        this.entityType = entityType;
+    }
+
+    @NonNull
+    public String getEntityKey() {
+        return entityKey;
+    }
+
+    public void setEntityKey(@NonNull String entityKey) {
+        this.entityKey = entityKey;
+    }
+
+    @NonNull
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(@NonNull String operation) {
+        this.operation = operation;
+    }
+
+    @NonNull
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(@NonNull String payload) {
+        this.payload = payload;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(long nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
@@ -1,5 +1,7 @@
 package com.ctse.androidgamereviewer.data.entities;
 
+import androidx.annotation.NonNull;
+import androidx.core.util.ObjectsCompat;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Index;
@@ -8,12 +10,17 @@ import androidx.room.PrimaryKey;
 /**
  * Room performs Object Relational Mapping and the @Entity annotation ensures that
  * the Review entity class is mapped to the relevant SQLite table in the database.
+ * Reviews are always read per game, so they are indexed on gameId, and on gameId together with
+ * the date and rating columns the per game queries sort and filter on.
  *
  * @see Entity
  * <a href="https://developer.android.com/topic/libraries/architecture/room">
  * Official Room Documentation</a>
  */
-@Entity(indices = {@Index(value = {"remote_id"}, unique = true)})
+@Entity(indices = {@Index(value = {"remote_id"}, unique = true),
+        @Index(value = {"gameId"}),
+        @Index(value = {"gameId", "date"}),
+        @Index(value = {"gameId", "rating"})})
 public class Review {
 
     @PrimaryKey(autoGenerate = true)
@@ -24,8 +31,19 @@ public class Review {
     private String gameId;
     private String title;
     private String body;
-    private String date;
+    /**
+     * Never null, a review without a date has an empty one so that it has a place in the
+     * date ordered pages
+     */
+    @NonNull
+    private String date = "";
     private int rating;
+    /**
+     * Fingerprint of the synced columns, compared on the next sync to skip unchanged reviews
+     */
+    @LocalOnly
+    @ColumnInfo(name = "content_hash")
+    private long contentHash;
 
     public Review() {
     }
@@ -70,11 +88,12 @@ public class Review {
         this.body = body;
     }
 
+    @NonNull
     public String getDate() {
         return date;
     }
 
-    public void setDate(String date) {
+    public void setDate(@NonNull String date) {
         this.date = date;
     }
 
@@ -85,4 +104,31 @@ public class Review {
     public void setRating(int rating) {
         this.rating = rating;
     }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(long contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Review review = (Review) o;
+        return id == review.id
+                && rating == review.rating
+                && ObjectsCompat.equals(_id, review._id)
+                && ObjectsCompat.equals(gameId, review.gameId)
+                && ObjectsCompat.equals(title, review.title)
+                && ObjectsCompat.equals(body, review.body)
+                && ObjectsCompat.equals(date, review.date);
+    }
+
+    @Override
+    public int hashCode() {
+        return ObjectsCompat.hash(id, _id, gameId, title, body, date, rating);
+    }
 }
@@ -0,0 +1,37 @@
+package com.ctse.androidgamereviewer.data.entities;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+
+/**
+ * Full-text index over the title and body of every review. Like {@link GameFts} it reads the
+ * text from the Review table, and Room keeps it up to date with triggers on Review.
+ *
+ * @see com.ctse.androidgamereviewer.data.dao.ReviewDAO#searchReviews(String, String)
+ */
+@Fts4(contentEntity = Review.class)
+@Entity(tableName = "ReviewFts")
+public class ReviewFts {
+
+    private String title;
+    private String body;
+
+    public ReviewFts() {
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+}
@@ -0,0 +1,33 @@
+package com.ctse.androidgamereviewer.data.entities;
+
+import androidx.room.ColumnInfo;
+
+/**
+ * Content hash stored for a synced row, read to decide whether an incoming row has to be
+ * written.
+ *
+ * @see com.ctse.androidgamereviewer.data.sync.ContentHash
+ */
+public class StoredHash {
+
+    @ColumnInfo(name = "remote_id")
+    private String remoteId;
+    @ColumnInfo(name = "content_hash")
+    private long contentHash;
+
+    public String getRemoteId() {
+        return remoteId;
+    }
+
+    public void setRemoteId(String remoteId) {
+        this.remoteId = remoteId;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(long contentHash) {
+        this.contentHash = contentHash;
+    }
+}
@@ -0,0 +1,44 @@
+package com.ctse.androidgamereviewer.data.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Position up to which a remote collection has been synced into the local database.
+ * The cursor is the largest updatedAt sequence value the web service has sent for the
+ * collection. It is written once every synced row is committed, so it never points past data
+ * which was not committed.
+ */
+@Entity
+public class SyncCursor {
+
+    public static final String GAMES = "games";
+
+    @PrimaryKey
+    @NonNull
+    private String resource;
+    private long cursor;
+
+    public SyncCursor(@NonNull String resource, long cursor) {
+        this.resource = resource;
+        this.cursor = cursor;
+    }
+
+    @NonNull
+    public String getResource() {
+        return resource;
+    }
+
+    public void setResource(@NonNull String resource) {
+        this.resource = resource;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(long cursor) {
+        this.cursor = cursor;
+    }
+}
@@ -0,0 +1,393 @@
+package com.ctse.androidgamereviewer.data.images;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import com.ctse.androidgamereviewer.R;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads cover images from the ImageStore into ImageViews.
+ * Images are decoded on background threads from the smallest stored size which fits the target
+ * view and downsampled to the size of the view, so a large cover never has to be decoded at full
+ * resolution. Decoded bitmaps are kept in an LRU cache bounded by their size in bytes and keyed
+ * by game id, image hash and stored size, so showing the same cover again does not decode it
+ * again.
+ * <p>
+ * See <a href="https://developer.android.com/topic/performance/graphics/load-bitmap">
+ * Loading large bitmaps efficiently</a> for more information.
+ */
+public class ImageLoader {
+
+    private static final int DECODE_THREADS = 2;
+    private static final int PREFETCH_THREADS = 1;
+
+    private static ImageLoader instance;
+
+    private final ImageStore imageStore;
+    private final DisplayMetrics displayMetrics;
+    private final ExecutorService executor;
+    /**
+     * Decodes prefetched covers, so they never queue in front of the covers of visible views
+     */
+    private final ExecutorService prefetchExecutor;
+    private final Handler mainHandler;
+    private final LruCache<String, Bitmap> cache;
+
+    private ImageLoader(Context context) {
+        imageStore = ImageStore.getInstance(context);
+        displayMetrics = context.getResources().getDisplayMetrics();
+        executor = Executors.newFixedThreadPool(DECODE_THREADS,
+                new DecodeThreadFactory("image-loader-", Process.THREAD_PRIORITY_BACKGROUND));
+        prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_THREADS,
+                new DecodeThreadFactory("image-prefetch-", Process.THREAD_PRIORITY_LOWEST));
+        mainHandler = new Handler(Looper.getMainLooper());
+
+        // Use an eighth of the available heap for decoded bitmaps
+        int cacheSize = (int) (Runtime.getRuntime().maxMemory() / 8);
+        cache = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    public static synchronized ImageLoader getInstance(Context context) {
+
+        if (instance == null) {
+            instance = new ImageLoader(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    /**
+     * Shows the cover of a game in the target view. A cached bitmap is shown straight away,
+     * otherwise the image is decoded on a background thread. A request which is still pending
+     * for the same view is cancelled. The stored size to decode is picked on the background
+     * thread too, as it looks at the files of the ImageStore.
+     *
+     * @param target    view which shows the image
+     * @param gameId    remote id of the game
+     * @param imageHash reference of the image in the ImageStore, may be null
+     */
+    public void load(final ImageView target, final String gameId, final String imageHash) {
+        if (imageHash == null) {
+            cancel(target);
+            return;
+        }
+
+        final int width = getTargetWidth(target);
+        final int height = getTargetHeight(target);
+
+        String requestKey = gameId + ":" + imageHash + ":" + width + "x" + height;
+        Request current = (Request) target.getTag(R.id.image_loader_request);
+        if (current != null && current.key.equals(requestKey)) {
+            // The view already shows or is loading this image
+            return;
+        }
+        cancel(target);
+
+        Bitmap cached = getCached(gameId, imageHash, width, height);
+        if (cached != null) {
+            target.setTag(R.id.image_loader_request, new Request(requestKey));
+            target.setImageBitmap(cached);
+            return;
+        }
+
+        final Request request = new Request(requestKey);
+        target.setTag(R.id.image_loader_request, request);
+        // A cached thumbnail of the same cover is shown until the requested size is decoded,
+        // otherwise the placeholder rather than the cover of a recycled row
+        Bitmap thumbnail = cache.get(getKey(gameId, imageHash, ImageStore.Size.THUMBNAIL));
+        if (thumbnail != null) {
+            target.setImageBitmap(thumbnail);
+        } else {
+            target.setImageResource(R.drawable.ic_image_black_24dp);
+        }
+
+        request.future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (request.cancelled) {
+                    return;
+                }
+
+                ImageStore.Size size = imageStore.getSize(imageHash, width, height);
+                String key = getKey(gameId, imageHash, size);
+                Bitmap bitmap = cache.get(key);
+                if (bitmap == null) {
+                    bitmap = decode(imageStore.getFile(imageHash, size), width, height);
+                    if (bitmap != null) {
+                        cache.put(key, bitmap);
+                    }
+                }
+
+                final Bitmap decoded = bitmap;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (request.cancelled
+                                || target.getTag(R.id.image_loader_request) != request) {
+                            return;
+                        }
+                        if (decoded != null) {
+                            target.setImageBitmap(decoded);
+                        } else {
+                            // Forget the failed request, so the next load of the image retries
+                            target.setTag(R.id.image_loader_request, null);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Decodes the cover of a game into the cache without showing it, as load() would for a view
+     * of the given size, so a view which shows it later finds it cached. Prefetches are decoded
+     * one at a time at a lower priority than the covers of the views.
+     *
+     * @param gameId    remote id of the game
+     * @param imageHash reference of the image in the ImageStore, may be null
+     * @param done      runs on the main thread once the cover is cached or could not be decoded,
+     *                  and straight away if there is nothing to decode
+     * @return the pending decode, or null if there is nothing to decode
+     */
+    public Future<?> prefetch(final String gameId, final String imageHash, final int width,
+                              final int height, final Runnable done) {
+        if (imageHash == null || getCached(gameId, imageHash, width, height) != null) {
+            done.run();
+            return null;
+        }
+
+        return prefetchExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ImageStore.Size size = imageStore.getSize(imageHash, width, height);
+                    String key = getKey(gameId, imageHash, size);
+                    if (cache.get(key) == null) {
+                        Bitmap bitmap = decode(imageStore.getFile(imageHash, size), width, height);
+                        if (bitmap != null) {
+                            cache.put(key, bitmap);
+                        }
+                    }
+                } finally {
+                    mainHandler.post(done);
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels the pending request of a view. Should be called when the view goes away, for
+     * example in onDestroy() of the activity which holds it.
+     */
+    public void cancel(ImageView target) {
+        Request request = (Request) target.getTag(R.id.image_loader_request);
+        if (request != null) {
+            request.cancel();
+            target.setTag(R.id.image_loader_request, null);
+        }
+    }
+
+    private static String getKey(String gameId, String imageHash, ImageStore.Size size) {
+        return gameId + ":" + imageHash + ":" + size;
+    }
+
+    /**
+     * Looks up a cached bitmap of the cover which is large enough for the requested size,
+     * smallest first, without looking at the ImageStore
+     */
+    private Bitmap getCached(String gameId, String imageHash, int width, int height) {
+        for (ImageStore.Size size : ImageStore.Size.values()) {
+            if (size.covers(width, height)) {
+                Bitmap cached = cache.get(getKey(gameId, imageHash, size));
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes an image file downsampled to at least the requested size.
+     */
+    static Bitmap decode(File file, int reqWidth, int reqHeight) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+
+    /**
+     * Decodes an image picked by the user straight from its content URI. The image is sampled
+     * while it is decoded and then scaled so that neither dimension exceeds maxDimension, so a
+     * large photo is never decoded at full resolution. Must be called on a background thread.
+     *
+     * @param resolver     resolver of the content URI
+     * @param uri          content URI of the image
+     * @param maxDimension largest width or height of the decoded image in pixels
+     * @return decoded image
+     * @throws IOException if the image could not be read or decoded
+     */
+    public static Bitmap decode(ContentResolver resolver, Uri uri, int maxDimension)
+            throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+
+        // Sample on the largest dimension so the decoded image is at most twice the bound
+        int largest = Math.max(options.outWidth, options.outHeight);
+        options.inSampleSize = 1;
+        while (largest / (options.inSampleSize * 2) >= maxDimension) {
+            options.inSampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Could not decode " + uri);
+        }
+
+        Bitmap scaled = ImageStore.scaleToFit(bitmap, maxDimension);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * Calculates the largest power of two sample size which keeps both dimensions of the image
+     * larger than the requested size.
+     */
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+
+        if (height > reqHeight || width > reqWidth) {
+            int halfHeight = height / 2;
+            int halfWidth = width / 2;
+
+            while ((halfHeight / inSampleSize) >= reqHeight
+                    && (halfWidth / inSampleSize) >= reqWidth) {
+                inSampleSize *= 2;
+            }
+        }
+
+        return inSampleSize;
+    }
+
+    /**
+     * Width of the view, or its layout width or the screen width if it is not laid out yet
+     */
+    private int getTargetWidth(ImageView target) {
+        if (target.getWidth() > 0) {
+            return target.getWidth();
+        }
+        ViewGroup.LayoutParams params = target.getLayoutParams();
+        if (params != null && params.width > 0) {
+            return params.width;
+        }
+        return displayMetrics.widthPixels;
+    }
+
+    /**
+     * Height of the view, or its layout height or the screen height if it is not laid out yet
+     */
+    private int getTargetHeight(ImageView target) {
+        if (target.getHeight() > 0) {
+            return target.getHeight();
+        }
+        ViewGroup.LayoutParams params = target.getLayoutParams();
+        if (params != null && params.height > 0) {
+            return params.height;
+        }
+        return displayMetrics.heightPixels;
+    }
+
+    /**
+     * A pending or completed load of an image into a view
+     */
+    private static class Request {
+
+        private final String key;
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        private Request(String key) {
+            this.key = key;
+        }
+
+        private void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Creates named decode threads with background priority so decoding does not compete with
+     * the UI thread.
+     */
+    private static class DecodeThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+        private final String namePrefix;
+        private final int priority;
+
+        /**
+         * @param priority Linux priority of the threads, see {@link Process#setThreadPriority(int)}
+         */
+        private DecodeThreadFactory(String namePrefix, int priority) {
+            this.namePrefix = namePrefix;
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(priority);
+                    runnable.run();
+                }
+            }, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.ctse.androidgamereviewer.data.images;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Base64;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content addressed file store for game cover images.
+ * Images are written to the app's private files directory and named after the SHA-256 hash of
+ * their bytes. The Game table only keeps this hash, so identical covers are stored once and
+ * queries which do not need the image never load its bytes into memory.
+ * <p>
+ * Next to the original, a small thumbnail and a medium detail image are stored in the lossy
+ * WebP format. Readers ask for the smallest size which fits their view through
+ * {@link #getSize(String, int, int)}, so small views never decode the full image.
+ */
+public class ImageStore {
+
+    private static final String IMAGE_DIRECTORY = "images";
+    private static final int VARIANT_QUALITY = 80;
+    private static final int ORIGINAL_QUALITY = 90;
+
+    /**
+     * Sizes in which every image is stored, smallest first.
+     */
+    public enum Size {
+        /**
+         * Icon sized image for lists
+         */
+        THUMBNAIL(256),
+        /**
+         * Screen width image for the detail screen
+         */
+        DETAIL(1080),
+        /**
+         * The image as it was added
+         */
+        ORIGINAL(Integer.MAX_VALUE);
+
+        /**
+         * Largest width or height of the image in pixels
+         */
+        private final int maxDimension;
+
+        Size(int maxDimension) {
+            this.maxDimension = maxDimension;
+        }
+
+        /**
+         * @return true if the image in this size is large enough for the requested size
+         */
+        public boolean covers(int reqWidth, int reqHeight) {
+            return maxDimension >= Math.max(reqWidth, reqHeight);
+        }
+    }
+
+    private static ImageStore instance;
+
+    /**
+     * Directory in which every image file of the store is kept
+     */
+    private final File directory;
+
+    ImageStore(File directory) {
+        this.directory = directory;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+    }
+
+    public static synchronized ImageStore getInstance(Context context) {
+
+        if (instance == null) {
+            instance = new ImageStore(new File(context.getApplicationContext().getFilesDir(),
+                    IMAGE_DIRECTORY));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Writes the image to the store unless an image with the same content is already present.
+     * The bytes are first written to a temporary file which is then renamed, so a reader never
+     * sees a partially written image.
+     *
+     * @param bytes encoded image
+     * @return hash which references the image in the store
+     * @throws IOException if the image could not be written
+     */
+    public String put(byte[] bytes) throws IOException {
+        String hash = hash(bytes);
+        File file = getFile(hash);
+
+        if (!file.exists()) {
+            File temp = File.createTempFile(hash, ".tmp", directory);
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(bytes);
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                if (!file.exists()) {
+                    throw new IOException("Could not store image " + hash);
+                }
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Compresses a bitmap straight into the store as a JPEG, together with its thumbnail and
+     * detail variants. The compressed bytes are hashed while they are written to a temporary
+     * file, so the encoded image is never copied into memory as a whole.
+     * Must be called on a background thread.
+     *
+     * @param bitmap decoded image, already bounded to the size which should be kept
+     * @return hash which references the image in the store
+     * @throws IOException if the image could not be written
+     */
+    public String put(Bitmap bitmap) throws IOException {
+        MessageDigest digest = newDigest();
+        File temp = File.createTempFile("upload", ".tmp", directory);
+
+        try (OutputStream out = new DigestOutputStream(new FileOutputStream(temp), digest)) {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, ORIGINAL_QUALITY, out)) {
+                throw new IOException("Could not compress image");
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+
+        String hash = toHex(digest.digest());
+        File file = getFile(hash);
+        if (file.exists() || !temp.renameTo(file)) {
+            temp.delete();
+            if (!file.exists()) {
+                throw new IOException("Could not store image " + hash);
+            }
+        }
+
+        putVariants(hash, bitmap);
+        return hash;
+    }
+
+    /**
+     * Decodes a Base64 encoded image, as sent by the web service, and writes it to the store.
+     *
+     * @param base64 Base64 encoded image
+     * @return hash which references the image in the store
+     * @throws IOException if the image could not be written
+     */
+    public String putBase64(String base64) throws IOException {
+        try {
+            return put(Base64.decode(base64, Base64.DEFAULT));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Image is not valid Base64", e);
+        }
+    }
+
+    /**
+     * @return true if an image with the given hash is present in the store
+     */
+    public boolean contains(String hash) {
+        return hash != null && getFile(hash).exists();
+    }
+
+    /**
+     * Creates the thumbnail and detail sized variants of a stored image. Variants which already
+     * exist are kept. Must be called on a background thread since the image is decoded.
+     *
+     * @param hash reference of the original image
+     * @throws IOException if a variant could not be written
+     */
+    public void putVariants(String hash) throws IOException {
+        putVariants(hash, null);
+    }
+
+    /**
+     * Creates the variants of a stored image from an already decoded bitmap, which avoids
+     * decoding the original again. The source bitmap is left untouched.
+     *
+     * @param hash   reference of the original image
+     * @param source decoded original, or null to decode it from the store
+     * @throws IOException if a variant could not be written
+     */
+    private void putVariants(String hash, Bitmap source) throws IOException {
+        File original = getFile(hash);
+
+        for (Size size : Size.values()) {
+            File file = getFile(hash, size);
+            if (size == Size.ORIGINAL || file.exists()) {
+                continue;
+            }
+
+            Bitmap bitmap = source != null ? source
+                    : ImageLoader.decode(original, size.maxDimension, size.maxDimension);
+            if (bitmap == null) {
+                throw new IOException("Could not decode image " + hash);
+            }
+            Bitmap scaled = scaleToFit(bitmap, size.maxDimension);
+
+            File temp = File.createTempFile(hash, ".tmp", directory);
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                scaled.compress(Bitmap.CompressFormat.WEBP, VARIANT_QUALITY, out);
+            } finally {
+                if (scaled != source) {
+                    scaled.recycle();
+                }
+                if (bitmap != source && bitmap != scaled) {
+                    bitmap.recycle();
+                }
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * @return file holding the original image with the given hash. The file may not exist.
+     */
+    public File getFile(String hash) {
+        return new File(directory, hash);
+    }
+
+    /**
+     * @return file holding the image with the given hash in the given size. The file may not
+     * exist.
+     */
+    public File getFile(String hash, Size size) {
+        if (size == Size.ORIGINAL) {
+            return getFile(hash);
+        }
+        return new File(directory, hash + "_" + size.name().toLowerCase() + ".webp");
+    }
+
+    /**
+     * Picks the smallest stored size of an image which still covers the requested size.
+     * Falls back to the original if the variant was never created, for example for images
+     * stored before variants existed.
+     *
+     * @param hash      reference of the image
+     * @param reqWidth  width of the view in pixels
+     * @param reqHeight height of the view in pixels
+     * @return size which should be decoded
+     */
+    public Size getSize(String hash, int reqWidth, int reqHeight) {
+        for (Size size : Size.values()) {
+            if (size.covers(reqWidth, reqHeight) && getFile(hash, size).exists()) {
+                return size;
+            }
+        }
+
+        return Size.ORIGINAL;
+    }
+
+    /**
+     * Helper method to scale a bitmap down so that neither dimension exceeds maxDimension.
+     * Returns the bitmap itself if it is already small enough, otherwise a scaled copy.
+     */
+    static Bitmap scaleToFit(Bitmap bitmap, int maxDimension) {
+        int largest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (largest <= maxDimension) {
+            return bitmap;
+        }
+
+        float scale = (float) maxDimension / largest;
+        return Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+    }
+
+    /**
+     * Reads an image back from the store.
+     *
+     * @param hash reference of the image
+     * @return encoded image bytes
+     * @throws IOException if the image is missing or could not be read
+     */
+    public byte[] get(String hash) throws IOException {
+        File file = getFile(hash);
+        byte[] bytes = new byte[(int) file.length()];
+
+        try (InputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = in.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of image " + hash);
+                }
+                offset += read;
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Reads an image back from the store in the Base64 form the web service expects.
+     */
+    public String getBase64(String hash) throws IOException {
+        return Base64.encodeToString(get(hash), Base64.NO_WRAP);
+    }
+
+    /**
+     * Helper method to create the hex encoded SHA-256 hash of the image content.
+     */
+    static String hash(byte[] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is available on every Android version
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return builder.toString();
+    }
+}
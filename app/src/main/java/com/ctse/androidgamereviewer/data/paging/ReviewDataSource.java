@@ -0,0 +1,152 @@
+package com.ctse.androidgamereviewer.data.paging;
+
+import com.ctse.androidgamereviewer.data.GameDatabase;
+import com.ctse.androidgamereviewer.data.dao.ReviewDAO;
+import com.ctse.androidgamereviewer.data.entities.Review;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.paging.DataSource;
+import androidx.paging.ItemKeyedDataSource;
+import androidx.room.InvalidationTracker;
+
+/**
+ * Loads the reviews of a single game page by page, newest first.
+ * Pages are fetched with a keyset cursor made of the date and id of the last loaded review
+ * rather than with an OFFSET, so loading the next page costs the same however far the user has
+ * scrolled and however many reviews the game has.
+ * <p>
+ * Room only generates OFFSET based data sources, so this data source registers itself with the
+ * database InvalidationTracker and invalidates itself whenever the Review table changes. The
+ * tracker only holds it weakly, as Room's own data sources are held, so a list which is no longer
+ * used is not kept alive until the next write to the Review table.
+ * <p>
+ * See <a href="https://developer.android.com/topic/libraries/architecture/paging/data">
+ * Paging data components documentation</a> for more information.
+ */
+public class ReviewDataSource extends ItemKeyedDataSource<ReviewDataSource.Key, Review> {
+
+    private final GameDatabase database;
+    private final ReviewDAO reviewDAO;
+    private final String gameId;
+    private final WeakObserver observer;
+
+    private ReviewDataSource(GameDatabase database, String gameId) {
+        this.database = database;
+        this.reviewDAO = database.reviewDAO();
+        this.gameId = gameId;
+        this.observer = new WeakObserver(database.getInvalidationTracker(), this);
+        database.getInvalidationTracker().addObserver(observer);
+    }
+
+    @Override
+    public void invalidate() {
+        database.getInvalidationTracker().removeObserver(observer);
+        super.invalidate();
+    }
+
+    @Override
+    public void loadInitial(@NonNull LoadInitialParams<Key> params,
+                            @NonNull LoadInitialCallback<Review> callback) {
+        Key key = params.requestedInitialKey;
+        List<Review> reviews;
+
+        if (key == null) {
+            reviews = reviewDAO.getReviewsByGameId(gameId, params.requestedLoadSize);
+        } else {
+            // Reload around the review which was shown before the table changed
+            reviews = reviewDAO.getReviewsFrom(gameId, key.date, key.id,
+                    params.requestedLoadSize);
+        }
+
+        callback.onResult(reviews);
+    }
+
+    @Override
+    public void loadAfter(@NonNull LoadParams<Key> params,
+                          @NonNull LoadCallback<Review> callback) {
+        callback.onResult(reviewDAO.getReviewsAfter(gameId, params.key.date, params.key.id,
+                params.requestedLoadSize));
+    }
+
+    @Override
+    public void loadBefore(@NonNull LoadParams<Key> params,
+                           @NonNull LoadCallback<Review> callback) {
+        // Newer reviews are queried oldest first, reverse them to keep the list newest first
+        List<Review> reviews = new ArrayList<>(reviewDAO.getReviewsBefore(gameId,
+                params.key.date, params.key.id, params.requestedLoadSize));
+        Collections.reverse(reviews);
+        callback.onResult(reviews);
+    }
+
+    @NonNull
+    @Override
+    public Key getKey(@NonNull Review item) {
+        return new Key(item.getDate(), item.getId());
+    }
+
+    /**
+     * Invalidates the data source when the Review table changes, without keeping it alive.
+     * Once the data source is collected the observer removes itself on the next change.
+     */
+    private static class WeakObserver extends InvalidationTracker.Observer {
+
+        private final InvalidationTracker tracker;
+        private final WeakReference<ReviewDataSource> dataSource;
+
+        private WeakObserver(InvalidationTracker tracker, ReviewDataSource dataSource) {
+            super("Review");
+            this.tracker = tracker;
+            this.dataSource = new WeakReference<>(dataSource);
+        }
+
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            ReviewDataSource current = dataSource.get();
+            if (current == null) {
+                tracker.removeObserver(this);
+            } else {
+                current.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Keyset cursor identifying a position in the list of reviews.
+     */
+    public static class Key {
+
+        private final String date;
+        private final int id;
+
+        Key(String date, int id) {
+            this.date = date;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Creates a new ReviewDataSource every time the previous one is invalidated.
+     */
+    public static class Factory extends DataSource.Factory<Key, Review> {
+
+        private final GameDatabase database;
+        private final String gameId;
+
+        public Factory(GameDatabase database, String gameId) {
+            this.database = database;
+            this.gameId = gameId;
+        }
+
+        @NonNull
+        @Override
+        public DataSource<Key, Review> create() {
+            return new ReviewDataSource(database, gameId);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.ctse.androidgamereviewer.data.retrofit;
+
+import com.ctse.androidgamereviewer.data.entities.LocalOnly;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Application wide network stack of the app. Every repository talks to the web service through
+ * the one GameWebService created here, so they share a single OkHttp client with its connection
+ * pool and dispatcher threads, instead of each screen opening its own connections.
+ * <p>
+ * See <a href="https://square.github.io/okhttp/">OkHttp</a> and
+ * <a href="https://square.github.io/retrofit/">Retrofit</a> for more information.
+ */
+public final class ApiClient {
+
+    static final String BASE_URL = "https://ctse-test-api.herokuapp.com/";
+
+    /**
+     * Idle connections kept open to the web service, and how long they are kept
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    /**
+     * Time allowed between two reads or writes. Streamed sync responses may take much longer in
+     * total, so there is no timeout for the whole call.
+     */
+    private static final long READ_WRITE_TIMEOUT_SECONDS = 30;
+    /**
+     * Requests running at the same time. Every request goes to the one web service host.
+     */
+    private static final int MAX_REQUESTS = 8;
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+
+    private static final Gson GSON = new GsonBuilder()
+            .addSerializationExclusionStrategy(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes field) {
+                    return field.getAnnotation(LocalOnly.class) != null;
+                }
+
+                @Override
+                public boolean shouldSkipClass(Class<?> type) {
+                    return false;
+                }
+            })
+            .create();
+
+    private static OkHttpClient client;
+    private static GameWebService webService;
+
+    private ApiClient() {
+    }
+
+    public static synchronized OkHttpClient getClient() {
+
+        if (client == null) {
+            client = createClient();
+        }
+
+        return client;
+    }
+
+    public static synchronized GameWebService getWebService() {
+
+        if (webService == null) {
+            webService = create(HttpUrl.parse(BASE_URL), getClient());
+        }
+
+        return webService;
+    }
+
+    /**
+     * @return Gson instance used to read and write the JSON of the web service. Fields marked
+     * {@link LocalOnly} are read but never written.
+     */
+    public static Gson getGson() {
+        return GSON;
+    }
+
+    static OkHttpClient createClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES,
+                        TimeUnit.MINUTES))
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(READ_WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+
+    static GameWebService create(HttpUrl baseUrl, OkHttpClient client) {
+        return new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create(getGson()))
+                .build()
+                .create(GameWebService.class);
+    }
+}
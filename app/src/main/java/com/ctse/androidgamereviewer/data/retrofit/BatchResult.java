@@ -0,0 +1,40 @@
+package com.ctse.androidgamereviewer.data.retrofit;
+
+/**
+ * Outcome of one item of a batch write. The web service answers a batch with one result per
+ * item, in the order the items were sent, so some items of a batch may be created while others
+ * fail.
+ */
+public class BatchResult {
+
+    /**
+     * Remote id of the created item, null if it was not created
+     */
+    private String _id;
+    /**
+     * HTTP status the item would have been answered with on its own
+     */
+    private int status;
+    private String error;
+
+    public BatchResult() {
+    }
+
+    public BatchResult(String _id, int status, String error) {
+        this._id = _id;
+        this.status = status;
+        this.error = error;
+    }
+
+    public String get_id() {
+        return _id;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -2,20 +2,35 @@ package com.ctse.androidgamereviewer.data.retrofit;
 
 import com.ctse.androidgamereviewer.data.entities.Game;
 import com.ctse.androidgamereviewer.data.entities.Review;
+import com.ctse.androidgamereviewer.data.sync.StreamingIngest;
 
 import java.util.List;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
 import retrofit2.http.POST;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 public interface GameWebService {
 
+    /**
+     * Fetches the games which changed after the given sync cursor. The web service returns only
+     * games whose updatedAt is larger than since, so a refresh with no changes returns an empty
+     * list.
+     * <p>
+     * The body is a JSON array which is streamed rather than buffered, read it with
+     * {@link StreamingIngest}.
+     *
+     * @param since cursor of the last sync, or null to fetch every game
+     */
+    @Streaming
     @GET("games/")
-    Call<List<Game>> getGames();
+    Call<ResponseBody> getGames(@Query("since") Long since);
 
     @POST("/games")
     Call<Game> saveGame(@Body Game game);
@@ -23,9 +38,29 @@ public interface GameWebService {
     @POST("/reviews")
     Call<Review> saveReview(@Body Review review);
 
+    /**
+     * Creates several games in one request.
+     *
+     * @return one result per game, in the order the games were sent
+     */
+    @POST("/games/batch")
+    Call<List<BatchResult>> saveGames(@Body List<Game> games);
+
+    /**
+     * Creates several reviews in one request.
+     *
+     * @return one result per review, in the order the reviews were sent
+     */
+    @POST("/reviews/batch")
+    Call<List<BatchResult>> saveReviews(@Body List<Review> reviews);
+
     @PUT("/reviews/{review_id}")
     Call<Review> updateReview(@Path("review_id") String review_id, @Body Review review);
 
+    /**
+     * Fetches every review as a streamed JSON array, read it with {@link StreamingIngest}.
+     */
+    @Streaming
     @GET("reviews/")
-    Call<List<Review>> getReviews();
+    Call<ResponseBody> getReviews();
 }
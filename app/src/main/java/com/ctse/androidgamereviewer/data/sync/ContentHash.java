@@ -0,0 +1,76 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+import com.ctse.androidgamereviewer.data.entities.Game;
+import com.ctse.androidgamereviewer.data.entities.Review;
+
+/**
+ * Fingerprints the synced content of games and reviews. The fingerprint is stored with every
+ * synced row, so a sync can tell which incoming rows differ from the stored ones without
+ * comparing every column and only write those.
+ * <p>
+ * Fields are hashed in order with 64 bit FNV-1a, each followed by a separator, and null is hashed
+ * differently from an empty string.
+ */
+public final class ContentHash {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ContentHash() {
+    }
+
+    /**
+     * Fingerprint of a game as received from the web service. The Base64 image is hashed while it
+     * is still attached, so unchanged games are recognised before their image is stored.
+     */
+    public static long of(Game game) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = add(hash, game.get_id());
+        hash = add(hash, game.getTitle());
+        hash = add(hash, game.getGenre());
+        hash = add(hash, game.getImage() != null ? game.getImage() : game.getImageHash());
+        hash = add(hash, game.getRelease_date());
+        hash = add(hash, game.getUpdatedAt());
+        return hash;
+    }
+
+    public static long of(Review review) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = add(hash, review.get_id());
+        hash = add(hash, review.getGameId());
+        hash = add(hash, review.getTitle());
+        hash = add(hash, review.getBody());
+        hash = add(hash, review.getDate());
+        hash = add(hash, review.getRating());
+        return hash;
+    }
+
+    /**
+     * Fingerprint of a single value, hashed as a field of a row is
+     */
+    public static long of(String value) {
+        return add(FNV_OFFSET_BASIS, value);
+    }
+
+    private static long add(long hash, String value) {
+        if (value == null) {
+            return mix(hash, 0xFFFF);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = mix(hash, value.charAt(i));
+        }
+        return mix(hash, 0);
+    }
+
+    private static long add(long hash, long value) {
+        for (int shift = 0; shift < 64; shift += 16) {
+            hash = mix(hash, (int) (value >>> shift) & 0xFFFF);
+        }
+        return mix(hash, 0);
+    }
+
+    private static long mix(long hash, int value) {
+        hash ^= value;
+        return hash * FNV_PRIME;
+    }
+}
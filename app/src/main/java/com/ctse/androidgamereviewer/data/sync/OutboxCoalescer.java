@@ -0,0 +1,74 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+/**
+ * Decides when the outbox is drained after a write is queued, so that writes made close
+ * together are sent in one batch request.
+ * <p>
+ * The first write after a quiet period opens a window and schedules a drain for its end, and
+ * the writes queued during the window join that drain. A drain is scheduled at once as soon as
+ * a full batch is waiting. Later writes never move the end of the window, so a steady stream of
+ * writes is still sent at least once per window.
+ */
+public class OutboxCoalescer {
+
+    /**
+     * Schedules a drain of the outbox
+     */
+    interface Scheduler {
+
+        void schedule(long delayMillis);
+    }
+
+    static final long WINDOW_MILLIS = 2_000;
+
+    private static OutboxCoalescer instance;
+
+    private final Scheduler scheduler;
+    private final long windowMillis;
+    private final int batchSize;
+    private long windowEndsAt;
+    private int queuedInWindow;
+
+    OutboxCoalescer(Scheduler scheduler, long windowMillis, int batchSize) {
+        this.scheduler = scheduler;
+        this.windowMillis = windowMillis;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the coalescer of the app, which schedules drains with {@link OutboxWorker}
+     */
+    public static synchronized OutboxCoalescer getInstance() {
+
+        if (instance == null) {
+            instance = new OutboxCoalescer(new Scheduler() {
+                @Override
+                public void schedule(long delayMillis) {
+                    OutboxWorker.schedule(delayMillis);
+                }
+            }, WINDOW_MILLIS, OutboxDrainer.BATCH_SIZE);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Must be called after an entry has been committed to the outbox
+     */
+    public void onEnqueued() {
+        onEnqueued(System.currentTimeMillis());
+    }
+
+    synchronized void onEnqueued(long now) {
+        if (now >= windowEndsAt) {
+            windowEndsAt = now + windowMillis;
+            queuedInWindow = 0;
+            scheduler.schedule(windowMillis);
+        }
+
+        if (++queuedInWindow >= batchSize) {
+            queuedInWindow = 0;
+            scheduler.schedule(0);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+import com.ctse.androidgamereviewer.data.dao.OutboxDAO;
+import com.ctse.androidgamereviewer.data.entities.OutboxEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Sends the writes waiting in the outbox to the web service.
+ * Entries are sent oldest first, and an entity whose oldest write fails is skipped until that
+ * write succeeds, so the writes of one entity always arrive in order. A failed write is retried
+ * after an exponential backoff with random jitter, so writes which failed together are not all
+ * retried at the same moment.
+ * <p>
+ * The entries which are due are sent in batches of one entity type, so a backlog of writes
+ * costs one request per {@link #BATCH_SIZE} entries rather than one per entry.
+ * <p>
+ * Drains never overlap within the process, a second drain waits for the running one.
+ */
+public class OutboxDrainer {
+
+    /**
+     * Outcome of sending one entry
+     */
+    public enum Result {
+        /**
+         * The web service accepted the write
+         */
+        SENT,
+        /**
+         * The write failed for a reason which may go away, it is sent again later
+         */
+        RETRY,
+        /**
+         * The web service refused the write and would refuse it again, it is dropped
+         */
+        REJECTED
+    }
+
+    /**
+     * Outcome of sending one entry, with the reason it was not sent
+     */
+    public static class Outcome {
+
+        private final Result result;
+        private final String error;
+
+        /**
+         * @param error why the entry was not sent, kept on the entry while it is retried
+         */
+        public Outcome(Result result, String error) {
+            this.result = result;
+            this.error = error;
+        }
+
+        public Result getResult() {
+            return result;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Sends outbox entries to the web service. Must be called on a background thread.
+     */
+    public interface Sender {
+
+        /**
+         * @param entries entries of one entity type, at most one per entity
+         * @return the outcome of each entry, in the order of the entries. Entries without an
+         * outcome are retried.
+         * @throws IOException if the web service could not be reached, every entry is retried
+         */
+        List<Outcome> send(List<OutboxEntry> entries) throws IOException;
+    }
+
+    static final long INITIAL_BACKOFF_MILLIS = 5_000;
+    static final long MAX_BACKOFF_MILLIS = 60 * 60 * 1000;
+    /**
+     * Largest number of entries sent in one request
+     */
+    static final int BATCH_SIZE = 50;
+
+    private static final Object DRAIN_LOCK = new Object();
+
+    private final OutboxDAO outboxDAO;
+    private final Sender sender;
+    private final Random random;
+    private volatile boolean stopped;
+
+    public OutboxDrainer(OutboxDAO outboxDAO, Sender sender) {
+        this(outboxDAO, sender, new Random());
+    }
+
+    OutboxDrainer(OutboxDAO outboxDAO, Sender sender, Random random) {
+        this.outboxDAO = outboxDAO;
+        this.sender = sender;
+        this.random = random;
+    }
+
+    /**
+     * Sends every entry which is due, until none is left or the drainer is stopped.
+     * Must be called on a background thread.
+     *
+     * @return time in milliseconds at which the next entry is due, or null if the outbox is
+     * empty
+     */
+    public Long drain() {
+        synchronized (DRAIN_LOCK) {
+            while (!stopped) {
+                long now = System.currentTimeMillis();
+                List<OutboxEntry> entries = outboxDAO.getReady(now, BATCH_SIZE);
+                if (entries.isEmpty()) {
+                    break;
+                }
+
+                for (List<OutboxEntry> batch : byEntityType(entries)) {
+                    if (stopped) {
+                        break;
+                    }
+                    send(batch, now);
+                }
+            }
+
+            return outboxDAO.getNextAttemptAt();
+        }
+    }
+
+    /**
+     * Stops a running drain after the batch which is being sent
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Splits entries by entity type, keeping their order within each type
+     */
+    private static Iterable<List<OutboxEntry>> byEntityType(List<OutboxEntry> entries) {
+        Map<String, List<OutboxEntry>> batches = new LinkedHashMap<>();
+        for (OutboxEntry entry : entries) {
+            List<OutboxEntry> batch = batches.get(entry.getEntityType());
+            if (batch == null) {
+                batch = new ArrayList<>();
+                batches.put(entry.getEntityType(), batch);
+            }
+            batch.add(entry);
+        }
+        return batches.values();
+    }
+
+    private void send(List<OutboxEntry> batch, long now) {
+        List<Outcome> outcomes;
+        Outcome missing = new Outcome(Result.RETRY, "no result for the entry");
+        try {
+            outcomes = sender.send(batch);
+        } catch (IOException | RuntimeException e) {
+            outcomes = Collections.emptyList();
+            missing = new Outcome(Result.RETRY, e.toString());
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            apply(batch.get(i), i < outcomes.size() ? outcomes.get(i) : missing, now);
+        }
+    }
+
+    private void apply(OutboxEntry entry, Outcome outcome, long now) {
+        switch (outcome.getResult()) {
+            case SENT:
+            case REJECTED:
+                // A rejected write would be refused on every attempt and block the later
+                // writes of its entity
+                outboxDAO.delete(entry);
+                break;
+            case RETRY:
+                entry.setAttempts(entry.getAttempts() + 1);
+                entry.setNextAttemptAt(now + backoffMillis(entry.getAttempts(), random));
+                entry.setLastError(outcome.getError());
+                outboxDAO.update(entry);
+                break;
+        }
+    }
+
+    /**
+     * Delay before the next attempt of an entry: doubles with every failed attempt up to an
+     * hour, of which the second half is random.
+     *
+     * @param attempts failed attempts so far, at least 1
+     */
+    static long backoffMillis(int attempts, Random random) {
+        long delay = MAX_BACKOFF_MILLIS;
+        if (attempts <= 20) {
+            delay = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << (attempts - 1));
+        }
+
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * half);
+    }
+}
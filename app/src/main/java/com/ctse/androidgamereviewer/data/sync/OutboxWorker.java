@@ -0,0 +1,109 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.ctse.androidgamereviewer.data.GameDatabase;
+import com.ctse.androidgamereviewer.data.images.ImageStore;
+import com.ctse.androidgamereviewer.data.retrofit.ApiClient;
+
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+/**
+ * Drains the outbox in the background while the device is online. WorkManager keeps the
+ * scheduled drain across process death and reboots, so pending writes are sent even if the app
+ * is not opened again. After each drain the next one is scheduled for the earliest retry.
+ * <p>
+ * A drain which is running is never cancelled by a new request: the request is appended to run
+ * after it, so entries committed while it runs are still sent. A drain which is only waiting for
+ * a later retry is replaced, so new writes do not wait behind it.
+ * <p>
+ * See <a href="https://developer.android.com/topic/libraries/architecture/workmanager">
+ * WorkManager documentation</a> for more information.
+ */
+public class OutboxWorker extends Worker {
+
+    private static final String WORK_NAME = "outbox-drain";
+
+    /**
+     * True while a drain runs in this process
+     */
+    private static volatile boolean draining;
+
+    private volatile OutboxDrainer drainer;
+
+    public OutboxWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules a drain as soon as the device is online, replacing a drain which was scheduled
+     * for a later retry. Called when the app starts, so entries left by an earlier run are sent.
+     */
+    public static void schedule() {
+        schedule(0);
+    }
+
+    /**
+     * Schedules a drain once the device is online and the delay has passed. It replaces a drain
+     * which is waiting, or follows the drain which is running.
+     */
+    public static void schedule(long delayMillis) {
+        enqueue(delayMillis, draining ? ExistingWorkPolicy.APPEND : ExistingWorkPolicy.REPLACE);
+    }
+
+    private static void enqueue(long delayMillis, ExistingWorkPolicy policy) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(OutboxWorker.class)
+                .setConstraints(constraints)
+                .setInitialDelay(delayMillis, TimeUnit.MILLISECONDS)
+                .build();
+        WorkManager.getInstance().enqueueUniqueWork(WORK_NAME, policy, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        drainer = new OutboxDrainer(GameDatabase.getInstance(context).outboxDAO(),
+                new WebServiceSender(ApiClient.getWebService(), ImageStore.getInstance(context),
+                        ApiClient.getGson()));
+
+        Long nextAttemptAt;
+        draining = true;
+        try {
+            nextAttemptAt = drainer.drain();
+        } finally {
+            // A drain requested from here on replaces the retry below, the drain is over
+            draining = false;
+        }
+
+        if (nextAttemptAt != null && !isStopped()) {
+            long delay = Math.max(0, nextAttemptAt - System.currentTimeMillis());
+            Log.d("OutboxWorker", "doWork: next drain in " + delay + " ms");
+            // Appended, replacing would cancel this worker before it returns
+            enqueue(delay, ExistingWorkPolicy.APPEND);
+        }
+        return Result.success();
+    }
+
+    @Override
+    public void onStopped() {
+        super.onStopped();
+        OutboxDrainer current = drainer;
+        if (current != null) {
+            current.stop();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs a task, such as a sync, at most once at a time. A caller which asks for a run while one
+ * is in flight joins it and shares its result, instead of starting another run which would
+ * download the same rows and race to write them. A caller which asks again within a minimum
+ * interval of the last successful run is given the result of that run, unless it forces a new
+ * one. A failed run does not count, so the next caller retries straight away.
+ *
+ * @param <T> result of the task
+ */
+public class SingleFlight<T> {
+
+    /**
+     * Receives the result of a run. Runs on the thread which completed the run, or on the
+     * calling thread if the caller was given the last result.
+     */
+    public interface Callback<T> {
+
+        /**
+         * @param result result of the run, null if it failed
+         * @param error  exception thrown by the task, null if it succeeded
+         */
+        void onComplete(T result, Exception error);
+    }
+
+    /**
+     * Monotonic time in milliseconds
+     */
+    interface Clock {
+
+        long millis();
+    }
+
+    private final Executor executor;
+    private final Callable<T> task;
+    private final long minIntervalMillis;
+    private final Clock clock;
+
+    private Flight current;
+    private boolean hasResult;
+    private T lastResult;
+    private long lastCompletedAt;
+
+    private int started;
+    private int joined;
+    private int throttled;
+
+    /**
+     * @param executor          executor which runs the task
+     * @param minIntervalMillis time after a successful run during which callers are given its
+     *                          result, unless they force a new run
+     */
+    public SingleFlight(Executor executor, Callable<T> task, long minIntervalMillis) {
+        this(executor, task, minIntervalMillis, new Clock() {
+            @Override
+            public long millis() {
+                return System.nanoTime() / 1_000_000;
+            }
+        });
+    }
+
+    SingleFlight(Executor executor, Callable<T> task, long minIntervalMillis, Clock clock) {
+        this.executor = executor;
+        this.task = task;
+        this.minIntervalMillis = minIntervalMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts a run of the task, or joins the run in flight.
+     *
+     * @param force    true to start a new run even if the last one is recent
+     * @param callback receives the result, may be null
+     * @return future of the run whose result the caller shares
+     * @throws RejectedExecutionException if the executor cannot take a new run
+     */
+    public Future<T> run(boolean force, Callback<T> callback) {
+        T result;
+        synchronized (this) {
+            if (current != null) {
+                joined++;
+                current.callbacks.add(callback);
+                return current.future;
+            }
+
+            if (force || !hasResult || clock.millis() - lastCompletedAt >= minIntervalMillis) {
+                Flight flight = new Flight();
+                flight.callbacks.add(callback);
+                // Set before the task is handed over, an executor may complete it right away
+                current = flight;
+                try {
+                    executor.execute(flight.future);
+                } catch (RejectedExecutionException e) {
+                    current = null;
+                    throw e;
+                }
+                started++;
+                return flight.future;
+            }
+
+            throttled++;
+            result = lastResult;
+        }
+
+        if (callback != null) {
+            callback.onComplete(result, null);
+        }
+        FutureTask<T> done = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, result);
+        done.run();
+        return done;
+    }
+
+    /**
+     * @return counts of the runs and requests so far
+     */
+    public synchronized Stats getStats() {
+        return new Stats(started, joined, throttled);
+    }
+
+    private void complete(Flight flight) {
+        T result = null;
+        Exception error = null;
+        try {
+            result = flight.future.get();
+        } catch (ExecutionException e) {
+            error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (InterruptedException | CancellationException e) {
+            error = e;
+        }
+
+        synchronized (this) {
+            if (current == flight) {
+                current = null;
+            }
+            if (error == null) {
+                hasResult = true;
+                lastResult = result;
+                lastCompletedAt = clock.millis();
+            }
+        }
+
+        // No callback is added once the flight is no longer current
+        for (Callback<T> callback : flight.callbacks) {
+            if (callback != null) {
+                callback.onComplete(result, error);
+            }
+        }
+    }
+
+    /**
+     * One run of the task and the callers which share it
+     */
+    private class Flight {
+
+        private final List<Callback<T>> callbacks = new ArrayList<>();
+        private final FutureTask<T> future = new FutureTask<T>(task) {
+            @Override
+            protected void done() {
+                complete(Flight.this);
+            }
+        };
+    }
+
+    /**
+     * Counters of the runs since the SingleFlight was created
+     */
+    public static class Stats {
+
+        private final int started;
+        private final int joined;
+        private final int throttled;
+
+        Stats(int started, int joined, int throttled) {
+            this.started = started;
+            this.joined = joined;
+            this.throttled = throttled;
+        }
+
+        /**
+         * @return runs which were started
+         */
+        public int getStarted() {
+            return started;
+        }
+
+        /**
+         * @return requests which joined a run in flight
+         */
+        public int getJoined() {
+            return joined;
+        }
+
+        /**
+         * @return requests which were given the result of a recent run
+         */
+        public int getThrottled() {
+            return throttled;
+        }
+
+        /**
+         * @return requests which did not start a run of their own
+         */
+        public int getCollapsed() {
+            return joined + throttled;
+        }
+
+        @Override
+        public String toString() {
+            return "started " + started + ", joined " + joined + ", throttled " + throttled;
+        }
+    }
+}
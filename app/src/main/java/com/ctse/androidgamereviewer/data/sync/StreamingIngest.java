@@ -0,0 +1,99 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+
+/**
+ * Reads a JSON array from the web service one element at a time and hands the elements on in
+ * batches of a fixed size. Only the text of the current element and the current batch are held
+ * in memory, so a response of any size can be written to the database with bounded memory use.
+ * <p>
+ * The response must be requested with {@link retrofit2.http.Streaming}, otherwise Retrofit reads
+ * the whole body into memory before it is returned.
+ *
+ * @param <T> type of the array elements
+ * @see JsonReader
+ */
+public class StreamingIngest<T> {
+
+    /**
+     * Receives the batches of a streamed response, usually to write each of them to the
+     * database in one transaction.
+     */
+    public interface BatchSink<T> {
+
+        /**
+         * @param batch elements read since the previous batch. The list is not reused, so the
+         *              sink may keep it.
+         */
+        void write(List<T> batch) throws IOException;
+    }
+
+    private final Gson gson;
+    private final Class<T> type;
+    private final int batchSize;
+
+    public StreamingIngest(Gson gson, Class<T> type, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.gson = gson;
+        this.type = type;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Streams the body of a response into the sink and closes it.
+     *
+     * @return number of elements read
+     * @throws IOException if the body could not be read, is not a JSON array or the sink failed.
+     *                     Batches written before the failure stay written.
+     */
+    public int ingest(ResponseBody body, BatchSink<T> sink) throws IOException {
+        try {
+            return ingest(body.charStream(), sink);
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Streams a JSON array into the sink.
+     *
+     * @return number of elements read
+     * @throws IOException if the array could not be read or the sink failed
+     */
+    public int ingest(Reader in, BatchSink<T> sink) throws IOException {
+        JsonReader reader = gson.newJsonReader(in);
+        List<T> batch = new ArrayList<>(batchSize);
+        int count = 0;
+
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                batch.add(gson.<T>fromJson(reader, type));
+                count++;
+                if (batch.size() == batchSize) {
+                    sink.write(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            reader.endArray();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Malformed response after " + count + " elements", e);
+        }
+
+        if (!batch.isEmpty()) {
+            sink.write(batch);
+        }
+        return count;
+    }
+}
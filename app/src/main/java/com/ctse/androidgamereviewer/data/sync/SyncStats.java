@@ -0,0 +1,41 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+/**
+ * Counts the rows a sync received, skipped because their content hash was unchanged, and wrote.
+ * A sync fills one instance from its background thread and publishes it once it is done.
+ */
+public class SyncStats {
+
+    private int seen;
+    private int skipped;
+    private int written;
+
+    /**
+     * Records a batch of which only some rows were written.
+     *
+     * @param seen    rows received
+     * @param written rows which differed and were written
+     */
+    public void add(int seen, int written) {
+        this.seen += seen;
+        this.written += written;
+        this.skipped += seen - written;
+    }
+
+    public int getSeen() {
+        return seen;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public int getWritten() {
+        return written;
+    }
+
+    @Override
+    public String toString() {
+        return "seen " + seen + ", skipped " + skipped + ", written " + written;
+    }
+}
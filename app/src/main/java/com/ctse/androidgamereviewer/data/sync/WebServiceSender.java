@@ -0,0 +1,220 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+import com.ctse.androidgamereviewer.data.entities.Game;
+import com.ctse.androidgamereviewer.data.entities.OutboxEntry;
+import com.ctse.androidgamereviewer.data.entities.Review;
+import com.ctse.androidgamereviewer.data.images.ImageStore;
+import com.ctse.androidgamereviewer.data.retrofit.BatchResult;
+import com.ctse.androidgamereviewer.data.retrofit.GameWebService;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import retrofit2.Response;
+
+/**
+ * Sends outbox entries with the create calls of GameWebService.
+ * Several entries are sent in one request to the batch endpoints, and the result of each item
+ * is applied to its own entry. If the web service has no batch endpoints, entries are sent one
+ * request each.
+ * <p>
+ * Games are sent with their cover Base64 encoded, so a batch of games is split into requests
+ * which carry at most {@link #MAX_IMAGE_BYTES_PER_REQUEST} of covers.
+ */
+public class WebServiceSender implements OutboxDrainer.Sender {
+
+    /**
+     * Largest size of the Base64 encoded covers sent in one request. A game whose cover is
+     * larger on its own is sent in a request of its own.
+     */
+    static final long MAX_IMAGE_BYTES_PER_REQUEST = 1024 * 1024;
+
+    private final GameWebService webService;
+    private final ImageStore imageStore;
+    private final Gson gson;
+    private volatile boolean batchSupported = true;
+
+    public WebServiceSender(GameWebService webService, ImageStore imageStore, Gson gson) {
+        this.webService = webService;
+        this.imageStore = imageStore;
+        this.gson = gson;
+    }
+
+    @Override
+    public List<OutboxDrainer.Outcome> send(List<OutboxEntry> entries) throws IOException {
+        List<OutboxDrainer.Outcome> outcomes = new ArrayList<>(entries.size());
+        for (List<OutboxEntry> request : splitByImageBytes(entries)) {
+            List<OutboxDrainer.Outcome> requestOutcomes;
+            try {
+                requestOutcomes = sendRequest(request);
+            } catch (IOException e) {
+                if (outcomes.isEmpty()) {
+                    throw e;
+                }
+                break;
+            }
+            outcomes.addAll(requestOutcomes);
+            if (requestOutcomes.size() < request.size()) {
+                // The outcomes must stay aligned with the entries, the rest is retried
+                break;
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Splits games into runs whose covers fit in one request, other entries are not split
+     */
+    private List<List<OutboxEntry>> splitByImageBytes(List<OutboxEntry> entries) {
+        if (!OutboxEntry.TYPE_GAME.equals(entries.get(0).getEntityType())) {
+            return Collections.singletonList(entries);
+        }
+
+        List<List<OutboxEntry>> requests = new ArrayList<>();
+        List<OutboxEntry> request = new ArrayList<>();
+        long requestBytes = 0;
+        for (OutboxEntry entry : entries) {
+            long bytes = encodedImageBytes(entry);
+            if (!request.isEmpty() && requestBytes + bytes > MAX_IMAGE_BYTES_PER_REQUEST) {
+                requests.add(request);
+                request = new ArrayList<>();
+                requestBytes = 0;
+            }
+            request.add(entry);
+            requestBytes += bytes;
+        }
+        requests.add(request);
+        return requests;
+    }
+
+    /**
+     * @return size of the cover of the game once Base64 encoded, 0 if it has none
+     */
+    private long encodedImageBytes(OutboxEntry entry) {
+        Game game = gson.fromJson(entry.getPayload(), Game.class);
+        if (game.getImage() != null) {
+            return game.getImage().length();
+        }
+        if (imageStore == null || !imageStore.contains(game.getImageHash())) {
+            return 0;
+        }
+        return (imageStore.getFile(game.getImageHash()).length() + 2) / 3 * 4;
+    }
+
+    private List<OutboxDrainer.Outcome> sendRequest(List<OutboxEntry> entries)
+            throws IOException {
+        if (entries.size() > 1 && batchSupported) {
+            Response<List<BatchResult>> response = sendBatch(entries);
+            if (response != null) {
+                if (response.isSuccessful() && response.body() != null) {
+                    return outcomesOf(response.body());
+                } else if (response.code() == 404 || response.code() == 405) {
+                    batchSupported = false;
+                } else if (resultOf(response.code()) == OutboxDrainer.Result.RETRY) {
+                    return Collections.nCopies(entries.size(), outcomeOf(response));
+                }
+                // A refused batch is sent again entry by entry, so only the entries which are
+                // refused on their own are dropped
+            }
+        }
+
+        List<OutboxDrainer.Outcome> outcomes = new ArrayList<>(entries.size());
+        for (OutboxEntry entry : entries) {
+            try {
+                outcomes.add(send(entry));
+            } catch (IOException e) {
+                if (outcomes.isEmpty()) {
+                    throw e;
+                }
+                // The entries without a result are retried, the sent ones must not be
+                break;
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * @return the response of the batch endpoint, or null if the entries have no batch endpoint
+     */
+    private Response<List<BatchResult>> sendBatch(List<OutboxEntry> entries) throws IOException {
+        switch (entries.get(0).getEntityType()) {
+            case OutboxEntry.TYPE_GAME:
+                List<Game> games = new ArrayList<>(entries.size());
+                for (OutboxEntry entry : entries) {
+                    games.add(toGame(entry));
+                }
+                return webService.saveGames(games).execute();
+            case OutboxEntry.TYPE_REVIEW:
+                List<Review> reviews = new ArrayList<>(entries.size());
+                for (OutboxEntry entry : entries) {
+                    reviews.add(gson.fromJson(entry.getPayload(), Review.class));
+                }
+                return webService.saveReviews(reviews).execute();
+            default:
+                return null;
+        }
+    }
+
+    private OutboxDrainer.Outcome send(OutboxEntry entry) throws IOException {
+        switch (entry.getEntityType()) {
+            case OutboxEntry.TYPE_GAME:
+                return outcomeOf(webService.saveGame(toGame(entry)).execute());
+            case OutboxEntry.TYPE_REVIEW:
+                Review review = gson.fromJson(entry.getPayload(), Review.class);
+                return outcomeOf(webService.saveReview(review).execute());
+            default:
+                return new OutboxDrainer.Outcome(OutboxDrainer.Result.REJECTED,
+                        "unknown entity type " + entry.getEntityType());
+        }
+    }
+
+    private Game toGame(OutboxEntry entry) throws IOException {
+        Game game = gson.fromJson(entry.getPayload(), Game.class);
+        // The outbox only references the image, the web service expects it Base64 encoded
+        if (game.getImage() == null && imageStore.contains(game.getImageHash())) {
+            game.setImage(imageStore.getBase64(game.getImageHash()));
+        }
+        // The hash only references the local copy of the image
+        game.setImageHash(null);
+        return game;
+    }
+
+    private static List<OutboxDrainer.Outcome> outcomesOf(List<BatchResult> items) {
+        List<OutboxDrainer.Outcome> outcomes = new ArrayList<>(items.size());
+        for (BatchResult item : items) {
+            if (item == null) {
+                outcomes.add(new OutboxDrainer.Outcome(OutboxDrainer.Result.RETRY,
+                        "no result for the item"));
+            } else if (resultOf(item.getStatus()) == OutboxDrainer.Result.SENT) {
+                outcomes.add(new OutboxDrainer.Outcome(OutboxDrainer.Result.SENT, null));
+            } else {
+                String error = item.getError();
+                outcomes.add(new OutboxDrainer.Outcome(resultOf(item.getStatus()),
+                        error != null ? error : "HTTP " + item.getStatus()));
+            }
+        }
+        return outcomes;
+    }
+
+    private static OutboxDrainer.Outcome outcomeOf(Response<?> response) {
+        OutboxDrainer.Result result = resultOf(response.code());
+        return new OutboxDrainer.Outcome(result, result == OutboxDrainer.Result.SENT
+                ? null : "HTTP " + response.code() + " " + response.message());
+    }
+
+    /**
+     * Maps an HTTP status to the outcome of the write. Timeouts, throttling and server errors
+     * are retried, other client errors would fail again and are dropped.
+     */
+    static OutboxDrainer.Result resultOf(int code) {
+        if (code >= 200 && code < 300) {
+            return OutboxDrainer.Result.SENT;
+        } else if (code == 408 || code == 429 || code >= 500) {
+            return OutboxDrainer.Result.RETRY;
+        }
+        return OutboxDrainer.Result.REJECTED;
+    }
+}
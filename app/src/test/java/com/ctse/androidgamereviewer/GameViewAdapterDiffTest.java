@@ -0,0 +1,197 @@
+package com.ctse.androidgamereviewer;
+
+import com.ctse.androidgamereviewer.data.entities.GameSummary;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.paging.AsyncPagedListDiffer;
+import androidx.paging.PagedList;
+import androidx.paging.PositionalDataSource;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Checks that GameViewAdapter only rebinds the rows whose displayed content changed after a
+ * sync, by submitting paged lists to an AsyncPagedListDiffer configured with the diff callback
+ * of the adapter, as the adapter does, and counting the notifications it dispatches.
+ */
+public class GameViewAdapterDiffTest {
+
+    private static final int GAME_COUNT = 5000;
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Runs the main thread work of the differ on the test thread
+     */
+    @Rule
+    public final InstantTaskExecutorRule instantTaskExecutor = new InstantTaskExecutorRule();
+
+    @Test
+    public void syncChangingOneRow_rebindsOneRow() {
+        List<GameSummary> before = createGames(0);
+        // Local ids differ, as they do for games which were deleted and synced again
+        List<GameSummary> after = createGames(GAME_COUNT);
+        after.get(1234).setGenre("Changed genre");
+
+        UpdateCounter counter = diff(before, after);
+
+        assertEquals(1, counter.changed);
+        assertEquals(0, counter.inserted);
+        assertEquals(0, counter.removed);
+        assertEquals(0, counter.moved);
+    }
+
+    @Test
+    public void unchangedSync_rebindsNothing() {
+        UpdateCounter counter = diff(createGames(0), createGames(GAME_COUNT));
+
+        assertEquals(0, counter.changed + counter.inserted + counter.removed + counter.moved);
+    }
+
+    @Test
+    public void newGame_insertsOneRow() {
+        List<GameSummary> after = createGames(0);
+        GameSummary added = new GameSummary();
+        added.set_id("5c9f5a1b2f8fb814ffffffff");
+        added.setTitle("New game");
+        after.add(0, added);
+
+        UpdateCounter counter = diff(createGames(0), after);
+
+        assertEquals(1, counter.inserted);
+        assertEquals(0, counter.changed + counter.removed + counter.moved);
+    }
+
+    @Test
+    public void stableIds_dependOnRemoteIdOnly() {
+        List<GameSummary> games = createGames(0);
+
+        assertEquals(StableIds.of("5c9f5a1b2f8fb814b56fa181"),
+                StableIds.of("5c9f5a1b2f8fb814b56fa181"));
+        assertNotEquals(StableIds.of(games.get(0).get_id()), StableIds.of(games.get(1).get_id()));
+    }
+
+    private static List<GameSummary> createGames(int idOffset) {
+        List<GameSummary> games = new ArrayList<>(GAME_COUNT);
+        for (int i = 0; i < GAME_COUNT; i++) {
+            GameSummary game = new GameSummary();
+            game.setId(idOffset + i + 1);
+            game.set_id(String.format("5c9f5a1b2f8fb814%08x", i));
+            game.setTitle("Game " + i);
+            game.setGenre("Genre " + (i % 7));
+            games.add(game);
+        }
+        return games;
+    }
+
+    /**
+     * Submits the old list and then the new one to a differ, as the list is replaced after a
+     * sync, and counts the notifications of the second submit
+     */
+    private static UpdateCounter diff(List<GameSummary> oldList, List<GameSummary> newList) {
+        UpdateCounter counter = new UpdateCounter();
+        AsyncPagedListDiffer<GameSummary> differ = new AsyncPagedListDiffer<>(counter,
+                new AsyncDifferConfig.Builder<>(GameViewAdapter.DIFF_CALLBACK)
+                        .setBackgroundThreadExecutor(DIRECT)
+                        .build());
+
+        differ.submitList(createPagedList(oldList));
+        assertEquals(oldList.size(), counter.inserted);
+        counter.reset();
+
+        differ.submitList(createPagedList(newList));
+        return counter;
+    }
+
+    private static PagedList<GameSummary> createPagedList(List<GameSummary> games) {
+        PagedList.Config config = new PagedList.Config.Builder()
+                .setPageSize(50)
+                .setInitialLoadSizeHint(GAME_COUNT + 1)
+                .setEnablePlaceholders(false)
+                .build();
+        return new PagedList.Builder<>(new ListDataSource(games), config)
+                .setFetchExecutor(DIRECT)
+                .setNotifyExecutor(DIRECT)
+                .build();
+    }
+
+    /**
+     * Serves a fixed list of games
+     */
+    private static class ListDataSource extends PositionalDataSource<GameSummary> {
+
+        private final List<GameSummary> games;
+
+        private ListDataSource(List<GameSummary> games) {
+            this.games = games;
+        }
+
+        @Override
+        public void loadInitial(@NonNull LoadInitialParams params,
+                                @NonNull LoadInitialCallback<GameSummary> callback) {
+            int position = computeInitialLoadPosition(params, games.size());
+            int size = computeInitialLoadSize(params, position, games.size());
+            callback.onResult(games.subList(position, position + size), position, games.size());
+        }
+
+        @Override
+        public void loadRange(@NonNull LoadRangeParams params,
+                              @NonNull LoadRangeCallback<GameSummary> callback) {
+            int end = Math.min(games.size(), params.startPosition + params.loadSize);
+            callback.onResult(games.subList(params.startPosition, end));
+        }
+    }
+
+    /**
+     * Counts the adapter notifications a RecyclerView would receive.
+     */
+    private static class UpdateCounter implements ListUpdateCallback {
+
+        private int changed;
+        private int inserted;
+        private int removed;
+        private int moved;
+
+        @Override
+        public void onInserted(int position, int count) {
+            inserted += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            removed += count;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            moved++;
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            changed += count;
+        }
+
+        private void reset() {
+            changed = 0;
+            inserted = 0;
+            removed = 0;
+            moved = 0;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.ctse.androidgamereviewer;
+
+import com.ctse.androidgamereviewer.data.entities.GameSummary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks which games ViewportPrefetcher prefetches as the list scrolls, against a loader which
+ * records the prefetches and finishes them on demand.
+ */
+public class ViewportPrefetcherTest {
+
+    private final RecordingLoader loader = new RecordingLoader();
+    private final ViewportPrefetcher prefetcher = new ViewportPrefetcher(loader, 2, 2, 4);
+
+    @Test
+    public void visibleGames_arePrefetchedFirst_twoAtATime() {
+        List<GameSummary> games = createGames(20);
+
+        prefetcher.onViewportChanged(games, 5, 7, true);
+        assertEquals(Arrays.asList("game-5", "game-6"), loader.started);
+
+        loader.finish("game-5");
+        loader.finish("game-6");
+        loader.finish("game-7");
+        loader.finish("game-8");
+        loader.finish("game-9");
+        loader.finish("game-4");
+        assertEquals(Arrays.asList("game-5", "game-6", "game-7", "game-8", "game-9", "game-4",
+                "game-3"), loader.started);
+    }
+
+    @Test
+    public void scrollingBack_prefetchesTheGamesAboveFirst() {
+        prefetcher.onViewportChanged(createGames(20), 5, 7, false);
+        loader.finish("game-5");
+        loader.finish("game-6");
+        loader.finish("game-7");
+
+        assertEquals(Arrays.asList("game-5", "game-6", "game-7", "game-4", "game-3"),
+                loader.started);
+    }
+
+    @Test
+    public void gamesScrolledOutOfRange_areCancelled() {
+        List<GameSummary> games = createGames(50);
+        prefetcher.onViewportChanged(games, 0, 2, true);
+
+        prefetcher.onViewportChanged(games, 30, 32, true);
+        // A cancelled prefetch which still reports back does not take a slot
+        loader.finish("game-0");
+
+        assertEquals(Arrays.asList("game-0", "game-1"), loader.cancelled);
+        assertEquals(Arrays.asList("game-0", "game-1", "game-30", "game-31"), loader.started);
+        assertEquals(2, prefetcher.getStats().getCancelled());
+        assertEquals(0, prefetcher.getStats().getCompleted());
+    }
+
+    @Test
+    public void warmGames_areNotPrefetchedAgain() {
+        List<GameSummary> games = createGames(3);
+        prefetcher.onViewportChanged(games, 0, 0, true);
+        loader.finish("game-0");
+        loader.finish("game-1");
+        loader.finish("game-2");
+
+        prefetcher.onViewportChanged(games, 1, 2, true);
+
+        assertEquals(3, loader.started.size());
+    }
+
+    @Test
+    public void placeholders_areSkipped() {
+        List<GameSummary> games = createGames(6);
+        games.set(0, null);
+        games.set(1, null);
+
+        prefetcher.onViewportChanged(games, 0, 1, true);
+
+        assertEquals(Arrays.asList("game-2", "game-3"), loader.started);
+    }
+
+    @Test
+    public void openedGames_areCountedAsHitsWhenWarm() {
+        List<GameSummary> games = createGames(10);
+        prefetcher.onViewportChanged(games, 0, 0, true);
+        loader.finish("game-0");
+
+        prefetcher.onGameOpened("game-0");
+        prefetcher.onGameOpened("game-1");
+        prefetcher.onGameOpened("game-9");
+
+        ViewportPrefetcher.Stats stats = prefetcher.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(1 / 3.0, stats.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void forgottenWarmGames_areCountedAsUnused() {
+        List<GameSummary> games = createGames(10);
+        for (int i = 0; i < 6; i++) {
+            prefetcher.onViewportChanged(games, i, i, true);
+            loader.finish("game-" + i);
+        }
+
+        // Six games were warmed, the two eldest are forgotten past the capacity of four
+        assertEquals(2, prefetcher.getStats().getUnused());
+    }
+
+    private static List<GameSummary> createGames(int count) {
+        List<GameSummary> games = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            GameSummary game = new GameSummary();
+            game.setId(i);
+            game.set_id("game-" + i);
+            games.add(game);
+        }
+        return games;
+    }
+
+    /**
+     * Records the started and cancelled prefetches, which finish when the test says so
+     */
+    private static class RecordingLoader implements ViewportPrefetcher.Loader {
+
+        private final List<String> started = new ArrayList<>();
+        private final List<String> cancelled = new ArrayList<>();
+        private final Map<String, Runnable> pending = new LinkedHashMap<>();
+
+        @Override
+        public ViewportPrefetcher.Cancellable start(final GameSummary game, Runnable done) {
+            started.add(game.get_id());
+            pending.put(game.get_id(), done);
+            return new ViewportPrefetcher.Cancellable() {
+                @Override
+                public void cancel() {
+                    cancelled.add(game.get_id());
+                }
+            };
+        }
+
+        private void finish(String gameId) {
+            Runnable done = pending.remove(gameId);
+            if (done != null) {
+                done.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.ctse.androidgamereviewer.data;
+
+import com.ctse.androidgamereviewer.data.entities.Game;
+import com.ctse.androidgamereviewer.data.retrofit.GameWebService;
+import com.ctse.androidgamereviewer.data.sync.StreamingIngest;
+import com.google.gson.Gson;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the games delta sync protocol against a local stand-in for the web service, which only
+ * returns games changed after the requested cursor. GameSyncTest runs the whole sync of
+ * GameRepository against a database on a device.
+ */
+public class DeltaSyncTest {
+
+    private static final String GAMES = "["
+            + "{\"_id\":\"a\",\"title\":\"Game A\",\"genre\":\"RPG\",\"updatedAt\":3},"
+            + "{\"_id\":\"b\",\"title\":\"Game B\",\"genre\":\"FPS\",\"updatedAt\":7}]";
+
+    private MockWebServer server;
+    private GameWebService webService;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String since = request.getRequestUrl().queryParameter("since");
+                if (since == null || Long.parseLong(since) < 7) {
+                    return new MockResponse().setBody(GAMES);
+                }
+                return new MockResponse().setBody("[]");
+            }
+        });
+        server.start();
+
+        webService = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(GameWebService.class);
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void firstSync_fetchesEverythingAndMovesCursor() throws Exception {
+        List<Game> games = getGames(null);
+
+        RecordedRequest request = server.takeRequest();
+        assertNull(request.getRequestUrl().queryParameter("since"));
+        assertEquals(2, games.size());
+        assertEquals(7, GameRepository.nextSyncCursor(null, games));
+    }
+
+    @Test
+    public void unchangedSync_transfersAnEmptyList() throws Exception {
+        long cursor = GameRepository.nextSyncCursor(null, getGames(null));
+        server.takeRequest();
+
+        List<Game> games = getGames(cursor);
+        RecordedRequest request = server.takeRequest();
+
+        assertEquals("7", request.getRequestUrl().queryParameter("since"));
+        assertTrue(games.isEmpty());
+        // An empty delta keeps the cursor where it was
+        assertEquals(cursor, GameRepository.nextSyncCursor(cursor,
+                Collections.<Game>emptyList()));
+    }
+
+    private List<Game> getGames(Long since) throws IOException {
+        final List<Game> games = new ArrayList<>();
+        Response<ResponseBody> response = webService.getGames(since).execute();
+        new StreamingIngest<>(new Gson(), Game.class, GameRepository.SYNC_BATCH_SIZE)
+                .ingest(response.body(), new StreamingIngest.BatchSink<Game>() {
+                    @Override
+                    public void write(List<Game> batch) {
+                        games.addAll(batch);
+                    }
+                });
+        return games;
+    }
+}
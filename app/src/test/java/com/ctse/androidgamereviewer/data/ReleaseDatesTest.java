@@ -0,0 +1,37 @@
+package com.ctse.androidgamereviewer.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the epoch days stored for the release date formats written by the app and the web
+ * service.
+ */
+public class ReleaseDatesTest {
+
+    @Test
+    public void appDates_areParsed() {
+        assertEquals(Long.valueOf(0), ReleaseDates.toEpochDay("January 1 1970"));
+        assertEquals(Long.valueOf(17167), ReleaseDates.toEpochDay("January 1 2017"));
+        assertEquals(Long.valueOf(11016), ReleaseDates.toEpochDay("February 29 2000"));
+        assertEquals(Long.valueOf(-1), ReleaseDates.toEpochDay("December 31 1969"));
+    }
+
+    @Test
+    public void isoDates_areParsed() {
+        assertEquals(Long.valueOf(17987), ReleaseDates.toEpochDay("2019-04-01"));
+        assertEquals(Long.valueOf(17987), ReleaseDates.toEpochDay("2019-04-01T10:00:00Z"));
+    }
+
+    @Test
+    public void unknownDates_areNull() {
+        assertNull(ReleaseDates.toEpochDay(null));
+        assertNull(ReleaseDates.toEpochDay(""));
+        assertNull(ReleaseDates.toEpochDay("February 29 2019"));
+        assertNull(ReleaseDates.toEpochDay("Spring 2019"));
+        assertNull(ReleaseDates.toEpochDay("Smarch 1 2019"));
+        assertNull(ReleaseDates.toEpochDay("2019-13-01"));
+    }
+}
@@ -0,0 +1,35 @@
+package com.ctse.androidgamereviewer.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that typed text is turned into safe full-text and LIKE arguments.
+ */
+public class SearchQueryTest {
+
+    @Test
+    public void words_matchAsPrefixes() {
+        SearchQuery query = SearchQuery.parse("  Half   Lif");
+
+        assertEquals("half* lif*", query.getMatch());
+        assertEquals("half lif%", query.getPrefixPattern());
+        assertEquals("%half lif%", query.getContainsPattern());
+    }
+
+    @Test
+    public void querySyntax_isDropped() {
+        SearchQuery query = SearchQuery.parse("\"zelda\" OR -mario* title:50%_off");
+
+        assertEquals("zelda* or* mario* title* 50* off*", query.getMatch());
+        assertEquals("zelda or mario title 50 off%", query.getPrefixPattern());
+    }
+
+    @Test
+    public void textWithoutWords_isEmpty() {
+        assertTrue(SearchQuery.parse(null).isEmpty());
+        assertTrue(SearchQuery.parse(" *\"- ").isEmpty());
+    }
+}
@@ -0,0 +1,220 @@
+package com.ctse.androidgamereviewer.data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks when WriteBehindBuffer commits its batches, against a transaction runner which records
+ * the writes of every transaction.
+ */
+public class WriteBehindBufferTest {
+
+    private final ExecutorService commitExecutor = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final RecordingTransactions transactions = new RecordingTransactions();
+    private final RecordingLogger logger = new RecordingLogger();
+
+    @After
+    public void shutdown() {
+        commitExecutor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void burst_isCommittedInOneTransactionInOrder() throws Exception {
+        WriteBehindBuffer buffer = createBuffer(100, 100);
+
+        Future<?> first = buffer.submit(new Put("game-1", "insert"));
+        buffer.submit(new Put("game-2", "insert"));
+        Future<?> last = buffer.submit(new Put("game-1", "update"));
+        last.get(1, TimeUnit.SECONDS);
+
+        assertTrue(first.isDone());
+        assertEquals(1, transactions.committed.size());
+        assertEquals(Arrays.asList("game-1 insert", "game-2 insert", "game-1 update"),
+                transactions.committed.get(0));
+    }
+
+    @Test
+    public void fullBatch_isCommittedBeforeTheWindowEnds() throws Exception {
+        WriteBehindBuffer buffer = createBuffer(TimeUnit.HOURS.toMillis(1), 2);
+
+        buffer.submit(new Put("a", "insert"));
+        Future<?> full = buffer.submit(new Put("b", "insert"));
+        Future<?> next = buffer.submit(new Put("c", "insert"));
+        full.get(1, TimeUnit.SECONDS);
+
+        assertEquals(1, transactions.committed.size());
+        assertFalse(next.isDone());
+    }
+
+    @Test
+    public void flush_commitsEveryWriteSubmittedSoFar() throws Exception {
+        WriteBehindBuffer buffer = createBuffer(TimeUnit.HOURS.toMillis(1), 2);
+        for (int i = 0; i < 5; i++) {
+            buffer.submit(new Put("review-" + i, "insert"));
+        }
+
+        buffer.flush();
+
+        assertEquals(3, transactions.committed.size());
+        assertEquals(Arrays.asList("review-4 insert"), transactions.committed.get(2));
+    }
+
+    @Test
+    public void failingWrite_failsOnlyItself() throws Exception {
+        WriteBehindBuffer buffer = createBuffer(TimeUnit.HOURS.toMillis(1), 100);
+        Future<?> before = buffer.submit(new Put("a", "insert"));
+        final List<Exception> reported = new ArrayList<>();
+        Future<?> failing = buffer.submit(new WriteBehindBuffer.Write() {
+            @Override
+            protected void apply() {
+                throw new IllegalStateException("constraint failed");
+            }
+
+            @Override
+            protected void failed(Exception error) {
+                reported.add(error);
+            }
+        });
+        Future<?> after = buffer.submit(new Put("b", "insert"));
+
+        buffer.flush();
+
+        before.get();
+        after.get();
+        try {
+            failing.get();
+            fail("Failed write was reported as committed");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(1, reported.size());
+        assertTrue(logger.messages.contains("failed: write was not committed"));
+        assertEquals(Arrays.asList(Arrays.asList("a insert"), Arrays.asList("b insert")),
+                transactions.committed);
+    }
+
+    @Test
+    public void failingPrepare_failsOnlyItsWrite() throws Exception {
+        WriteBehindBuffer buffer = createBuffer(TimeUnit.HOURS.toMillis(1), 100);
+        Future<?> failing = buffer.submit(new Put("a", "insert") {
+            @Override
+            protected void prepare() {
+                throw new IllegalStateException("disk full");
+            }
+        });
+        Future<?> other = buffer.submit(new Put("b", "insert"));
+
+        buffer.flush();
+
+        other.get();
+        assertTrue(failing.isDone());
+        assertEquals(Arrays.asList(Arrays.asList("b insert")), transactions.committed);
+    }
+
+    @Test
+    public void fullBatch_staysOpenWhileTheCommitQueueIsFull() throws Exception {
+        final boolean[] reject = {true};
+        WriteBehindBuffer buffer = new WriteBehindBuffer(transactions, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (reject[0]) {
+                    throw new RejectedExecutionException("commit queue is full");
+                }
+                commitExecutor.execute(command);
+            }
+        }, new WriteBehindBuffer.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+            }
+        }, TimeUnit.HOURS.toMillis(1), 2, logger);
+
+        buffer.submit(new Put("a", "insert"));
+        buffer.submit(new Put("b", "insert"));
+        reject[0] = false;
+        buffer.submit(new Put("c", "insert"));
+        buffer.flush();
+
+        assertEquals(Arrays.asList(Arrays.asList("a insert", "b insert", "c insert")),
+                transactions.committed);
+        assertTrue(logger.messages.contains("submit: commit queue is full"));
+    }
+
+    private WriteBehindBuffer createBuffer(long windowMillis, int maxWrites) {
+        return new WriteBehindBuffer(transactions, commitExecutor,
+                new WriteBehindBuffer.Scheduler() {
+                    @Override
+                    public void schedule(Runnable task, long delayMillis) {
+                        timer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+                    }
+                }, windowMillis, maxWrites, logger);
+    }
+
+    /**
+     * Records the messages of the buffer, android.util.Log is not available on the JVM
+     */
+    private static class RecordingLogger implements WriteBehindBuffer.Logger {
+
+        private final List<String> messages = new ArrayList<>();
+
+        @Override
+        public synchronized void debug(String message, Throwable error) {
+            messages.add(message);
+        }
+
+        @Override
+        public synchronized void error(String message, Throwable error) {
+            messages.add(message);
+        }
+    }
+
+    /**
+     * Records the writes of each transaction, and drops them when the transaction fails
+     */
+    private static class RecordingTransactions implements WriteBehindBuffer.TransactionRunner {
+
+        private final List<List<String>> committed = new ArrayList<>();
+        private List<String> current;
+
+        @Override
+        public void runInTransaction(Runnable body) {
+            current = new ArrayList<>();
+            body.run();
+            committed.add(current);
+        }
+    }
+
+    private class Put extends WriteBehindBuffer.Write {
+
+        private final String key;
+        private final String operation;
+
+        private Put(String key, String operation) {
+            this.key = key;
+            this.operation = operation;
+        }
+
+        @Override
+        protected void apply() {
+            transactions.current.add(key + " " + operation);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.ctse.androidgamereviewer.data.retrofit;
+
+import com.ctse.androidgamereviewer.data.entities.Game;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Simulates repeated activity launches, each of which builds its repositories and refreshes
+ * through the shared client. The number of threads and open connections must not grow with
+ * the number of launches.
+ */
+public class ApiClientTest {
+
+    private static final int LAUNCHES = 200;
+    /**
+     * Threads the JVM may start or stop on its own while the test runs
+     */
+    private static final int THREAD_TOLERANCE = 2;
+
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody("[]");
+            }
+        });
+        server.start();
+        client = ApiClient.createClient();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        server.shutdown();
+    }
+
+    @Test
+    public void repeatedLaunches_keepThreadAndConnectionCountsFlat() throws Exception {
+        // The first launch starts the dispatcher and connection pool threads
+        launch();
+        int threads = Thread.getAllStackTraces().size();
+
+        for (int i = 0; i < LAUNCHES; i++) {
+            launch();
+        }
+
+        int threadsAfter = Thread.getAllStackTraces().size();
+        assertTrue("threads grew from " + threads + " to " + threadsAfter,
+                threadsAfter <= threads + THREAD_TOLERANCE);
+        assertEquals(1, client.connectionPool().connectionCount());
+        assertEquals((LAUNCHES + 1) * 2, server.getRequestCount());
+    }
+
+    @Test
+    public void webService_isShared() {
+        assertSame(ApiClient.getWebService(), ApiClient.getWebService());
+        assertSame(ApiClient.getClient(), ApiClient.getClient());
+    }
+
+    @Test
+    public void localOnlyFields_areReadButNotWritten() {
+        Game game = ApiClient.getGson().fromJson(
+                "{\"_id\":\"a\",\"title\":\"Game A\",\"updatedAt\":7}", Game.class);
+        game.setImageHash("hash");
+        game.setContentHash(42);
+        game.setReleaseEpochDay(17_897L);
+
+        String json = ApiClient.getGson().toJson(game);
+
+        assertEquals(7, game.getUpdatedAt());
+        assertTrue(json, json.contains("\"imageHash\":\"hash\""));
+        assertFalse(json, json.contains("updatedAt"));
+        assertFalse(json, json.contains("contentHash"));
+        assertFalse(json, json.contains("releaseEpochDay"));
+    }
+
+    /**
+     * What a launch does over the network: a synchronous streamed sync and an enqueued call.
+     */
+    private void launch() throws Exception {
+        GameWebService webService = ApiClient.create(server.url("/"), client);
+
+        Response<ResponseBody> games = webService.getGames(null).execute();
+        games.body().close();
+
+        final CountDownLatch done = new CountDownLatch(1);
+        webService.getReviews().enqueue(new Callback<ResponseBody>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                response.body().close();
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable t) {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,73 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+import com.ctse.androidgamereviewer.data.dao.OutboxDAO;
+import com.ctse.androidgamereviewer.data.entities.OutboxEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.lifecycle.LiveData;
+
+/**
+ * Outbox kept in a list, with the queries of OutboxDAO written out in Java.
+ */
+class FakeOutboxDAO extends OutboxDAO {
+
+    final List<OutboxEntry> entries = new ArrayList<>();
+    private long nextId = 1;
+
+    void add(String type, String key, String payload) {
+        insert(new OutboxEntry(type, key, OutboxEntry.OPERATION_CREATE, payload, 0));
+    }
+
+    @Override
+    public long insert(OutboxEntry entry) {
+        entry.setId(nextId++);
+        entries.add(entry);
+        return entry.getId();
+    }
+
+    @Override
+    public void update(OutboxEntry entry) {
+        // Entries are stored by reference
+    }
+
+    @Override
+    public void delete(OutboxEntry entry) {
+        entries.remove(entry);
+    }
+
+    @Override
+    public List<OutboxEntry> getReady(long now, int limit) {
+        List<OutboxEntry> ready = new ArrayList<>();
+        List<String> seen = new ArrayList<>();
+        for (OutboxEntry entry : entries) {
+            String entity = entry.getEntityType() + "/" + entry.getEntityKey();
+            if (seen.contains(entity)) {
+                continue;
+            }
+            seen.add(entity);
+            if (entry.getNextAttemptAt() <= now && ready.size() < limit) {
+                ready.add(entry);
+            }
+        }
+        return ready;
+    }
+
+    @Override
+    public Long getNextAttemptAt() {
+        if (entries.isEmpty()) {
+            return null;
+        }
+        long next = Long.MAX_VALUE;
+        for (OutboxEntry entry : entries) {
+            next = Math.min(next, entry.getNextAttemptAt());
+        }
+        return next;
+    }
+
+    @Override
+    public LiveData<Integer> getPendingCount() {
+        return null;
+    }
+}
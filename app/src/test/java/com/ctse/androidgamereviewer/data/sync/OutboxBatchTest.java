@@ -0,0 +1,237 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+import com.ctse.androidgamereviewer.data.entities.Game;
+import com.ctse.androidgamereviewer.data.entities.OutboxEntry;
+import com.ctse.androidgamereviewer.data.entities.Review;
+import com.ctse.androidgamereviewer.data.retrofit.BatchResult;
+import com.ctse.androidgamereviewer.data.retrofit.GameWebService;
+import com.google.gson.Gson;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drains queued reviews against a local stand-in for the web service, which answers every
+ * request after a fixed latency. Compares the request count and the total time of the batch
+ * endpoint against one request per review, and checks that the result of each item of a batch
+ * is applied to its own entry.
+ */
+public class OutboxBatchTest {
+
+    private static final int REVIEWS = 1_000;
+    private static final long LATENCY_MILLIS = 5;
+
+    private final Gson gson = new Gson();
+    private MockWebServer server;
+    private GameWebService webService;
+    private volatile boolean batchEndpoint = true;
+    private final List<Integer> gameBatchSizes = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void startServer() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                MockResponse response = new MockResponse()
+                        .setHeadersDelay(LATENCY_MILLIS, TimeUnit.MILLISECONDS);
+                String body = request.getBody().readUtf8();
+                if (request.getPath().equals("/reviews/batch")) {
+                    if (!batchEndpoint) {
+                        return response.setResponseCode(404);
+                    }
+                    return response.setBody(gson.toJson(saveAll(
+                            gson.fromJson(body, Review[].class))));
+                }
+                if (request.getPath().equals("/games/batch")) {
+                    Game[] games = gson.fromJson(body, Game[].class);
+                    gameBatchSizes.add(games.length);
+                    List<BatchResult> results = new ArrayList<>();
+                    for (Game game : games) {
+                        results.add(new BatchResult("id-" + game.getTitle(), 201, null));
+                    }
+                    return response.setBody(gson.toJson(results));
+                }
+                return response.setResponseCode(201).setBody(body);
+            }
+        });
+        server.start();
+
+        webService = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(GameWebService.class);
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void queuedReviews_areSentInFewerRequests() {
+        Drain batched = drain(queueReviews(REVIEWS));
+        batchEndpoint = false;
+        Drain single = drain(queueReviews(REVIEWS));
+
+        assertEquals(REVIEWS / OutboxDrainer.BATCH_SIZE, batched.requests);
+        // The first batch finds no batch endpoint, then every review is sent on its own
+        assertEquals(REVIEWS + 1, single.requests);
+        assertTrue(batched + " vs " + single, batched.millis < single.millis);
+    }
+
+    @Test
+    public void partialSuccess_isAppliedPerItem() {
+        FakeOutboxDAO outbox = new FakeOutboxDAO();
+        queue(outbox, "saved");
+        queue(outbox, "rejected");
+        queue(outbox, "busy");
+
+        Long next = new OutboxDrainer(outbox,
+                new WebServiceSender(webService, null, gson)).drain();
+
+        assertEquals(1, server.getRequestCount());
+        assertNotNull(next);
+        assertEquals(1, outbox.entries.size());
+        OutboxEntry retried = outbox.entries.get(0);
+        assertEquals("busy", gson.fromJson(retried.getPayload(), Review.class).getTitle());
+        assertEquals(1, retried.getAttempts());
+        assertEquals("try again later", retried.getLastError());
+    }
+
+    @Test
+    public void gamesWithCovers_areSplitByImageBytes() {
+        FakeOutboxDAO outbox = new FakeOutboxDAO();
+        char[] cover = new char[(int) (WebServiceSender.MAX_IMAGE_BYTES_PER_REQUEST / 3)];
+        Arrays.fill(cover, 'A');
+        for (int i = 0; i < 7; i++) {
+            Game game = new Game();
+            game.setTitle("Game " + i);
+            game.setImage(new String(cover));
+            outbox.insert(new OutboxEntry(OutboxEntry.TYPE_GAME, game.getTitle(),
+                    OutboxEntry.OPERATION_CREATE, gson.toJson(game), 0));
+        }
+
+        Long next = new OutboxDrainer(outbox,
+                new WebServiceSender(webService, null, gson)).drain();
+
+        assertNull(next);
+        assertTrue(outbox.entries.isEmpty());
+        assertEquals(Arrays.asList(3, 3, 1), gameBatchSizes);
+    }
+
+    @Test
+    public void coalescer_drainsOncePerWindow() {
+        RecordingScheduler scheduler = new RecordingScheduler();
+        OutboxCoalescer coalescer = new OutboxCoalescer(scheduler, 1_000, 3);
+
+        coalescer.onEnqueued(0);
+        coalescer.onEnqueued(400);
+        coalescer.onEnqueued(1_200);
+
+        assertEquals(Arrays.asList(1_000L, 1_000L), scheduler.delays);
+    }
+
+    @Test
+    public void coalescer_drainsAtOnceWhenABatchIsWaiting() {
+        RecordingScheduler scheduler = new RecordingScheduler();
+        OutboxCoalescer coalescer = new OutboxCoalescer(scheduler, 1_000, 3);
+
+        for (int i = 0; i < 4; i++) {
+            coalescer.onEnqueued(i);
+        }
+
+        assertEquals(Arrays.asList(1_000L, 0L), scheduler.delays);
+    }
+
+    private Drain drain(FakeOutboxDAO outbox) {
+        int requestsBefore = server.getRequestCount();
+        long start = System.nanoTime();
+        Long next = new OutboxDrainer(outbox, new WebServiceSender(webService, null, gson))
+                .drain();
+
+        Drain drain = new Drain();
+        drain.millis = (System.nanoTime() - start) / 1_000_000;
+        drain.requests = server.getRequestCount() - requestsBefore;
+        assertNull(next);
+        assertTrue(outbox.entries.isEmpty());
+        return drain;
+    }
+
+    private FakeOutboxDAO queueReviews(int count) {
+        FakeOutboxDAO outbox = new FakeOutboxDAO();
+        for (int i = 0; i < count; i++) {
+            queue(outbox, "Review " + i);
+        }
+        return outbox;
+    }
+
+    private void queue(FakeOutboxDAO outbox, String title) {
+        Review review = new Review();
+        review.setGameId("game");
+        review.setTitle(title);
+        review.setRating(4);
+        outbox.insert(new OutboxEntry(OutboxEntry.TYPE_REVIEW, title,
+                OutboxEntry.OPERATION_CREATE, gson.toJson(review), 0));
+    }
+
+    /**
+     * Creates the reviews of a batch request, refusing those titled rejected and failing those
+     * titled busy.
+     */
+    private static List<BatchResult> saveAll(Review[] reviews) {
+        List<BatchResult> results = new ArrayList<>();
+        for (Review review : reviews) {
+            if ("rejected".equals(review.getTitle())) {
+                results.add(new BatchResult(null, 400, "invalid review"));
+            } else if ("busy".equals(review.getTitle())) {
+                results.add(new BatchResult(null, 503, "try again later"));
+            } else {
+                results.add(new BatchResult("id-" + review.getTitle(), 201, null));
+            }
+        }
+        return results;
+    }
+
+    private static class RecordingScheduler implements OutboxCoalescer.Scheduler {
+
+        private final List<Long> delays = new ArrayList<>();
+
+        @Override
+        public void schedule(long delayMillis) {
+            delays.add(delayMillis);
+        }
+    }
+
+    private static class Drain {
+
+        private long millis;
+        private int requests;
+
+        @Override
+        public String toString() {
+            return requests + " requests in " + millis + " ms";
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+import com.ctse.androidgamereviewer.data.entities.OutboxEntry;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the ordering and retry behaviour of OutboxDrainer against an in-memory outbox.
+ */
+public class OutboxDrainerTest {
+
+    @Test
+    public void drain_sendsEveryEntryInOrder() {
+        FakeOutboxDAO outbox = new FakeOutboxDAO();
+        outbox.add("review", "a", "a1");
+        outbox.add("review", "b", "b1");
+        outbox.add("review", "a", "a2");
+        RecordingSender sender = new RecordingSender();
+
+        Long next = new OutboxDrainer(outbox, sender).drain();
+
+        assertNull(next);
+        assertEquals(Arrays.asList("a1", "b1", "a2"), sender.sent);
+        assertTrue(outbox.entries.isEmpty());
+    }
+
+    @Test
+    public void failingEntry_blocksOnlyItsOwnEntity() {
+        FakeOutboxDAO outbox = new FakeOutboxDAO();
+        outbox.add("review", "a", "a1");
+        outbox.add("review", "a", "a2");
+        outbox.add("review", "b", "b1");
+        RecordingSender sender = new RecordingSender();
+        sender.failing.add("a1");
+
+        Long next = new OutboxDrainer(outbox, sender).drain();
+
+        assertNotNull(next);
+        assertEquals(Arrays.asList("a1", "b1"), sender.sent);
+        assertEquals(2, outbox.entries.size());
+        OutboxEntry failed = outbox.entries.get(0);
+        assertEquals("a1", failed.getPayload());
+        assertEquals(1, failed.getAttempts());
+        assertEquals("503 try again later", failed.getLastError());
+        assertTrue(failed.getNextAttemptAt() > System.currentTimeMillis());
+    }
+
+    @Test
+    public void unreachableService_retriesTheWholeBatch() {
+        FakeOutboxDAO outbox = new FakeOutboxDAO();
+        outbox.add("review", "a", "a1");
+        outbox.add("review", "b", "b1");
+        RecordingSender sender = new RecordingSender();
+        sender.offline = true;
+
+        new OutboxDrainer(outbox, sender).drain();
+
+        assertEquals(2, outbox.entries.size());
+        for (OutboxEntry entry : outbox.entries) {
+            assertEquals(1, entry.getAttempts());
+            assertNotNull(entry.getLastError());
+        }
+    }
+
+    @Test
+    public void entries_areSentInBatchesOfOneType() {
+        FakeOutboxDAO outbox = new FakeOutboxDAO();
+        for (int i = 0; i < OutboxDrainer.BATCH_SIZE + 1; i++) {
+            outbox.add("review", "r" + i, "r" + i);
+        }
+        outbox.add("game", "g", "g1");
+        RecordingSender sender = new RecordingSender();
+
+        new OutboxDrainer(outbox, sender).drain();
+
+        assertEquals(Arrays.asList(OutboxDrainer.BATCH_SIZE, 1, 1), sender.batchSizes);
+        assertTrue(outbox.entries.isEmpty());
+    }
+
+    @Test
+    public void rejectedEntry_isDropped() {
+        FakeOutboxDAO outbox = new FakeOutboxDAO();
+        outbox.add("review", "a", "a1");
+        outbox.add("review", "a", "a2");
+        RecordingSender sender = new RecordingSender();
+        sender.rejected.add("a1");
+
+        new OutboxDrainer(outbox, sender).drain();
+
+        assertEquals(Arrays.asList("a1", "a2"), sender.sent);
+        assertTrue(outbox.entries.isEmpty());
+    }
+
+    @Test
+    public void backoff_growsExponentiallyWithJitter() {
+        Random random = new Random(42);
+        for (int attempts = 1; attempts <= 30; attempts++) {
+            long delay = Math.min(OutboxDrainer.MAX_BACKOFF_MILLIS,
+                    OutboxDrainer.INITIAL_BACKOFF_MILLIS << Math.min(attempts - 1, 20));
+            long backoff = OutboxDrainer.backoffMillis(attempts, random);
+
+            assertTrue(attempts + ": " + backoff, backoff >= delay / 2);
+            assertTrue(attempts + ": " + backoff, backoff <= delay);
+        }
+    }
+
+    /**
+     * Sends entries by recording their payload, failing or rejecting the listed payloads.
+     */
+    private static class RecordingSender implements OutboxDrainer.Sender {
+
+        private final List<String> sent = new ArrayList<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+        private final List<String> failing = new ArrayList<>();
+        private final List<String> rejected = new ArrayList<>();
+        private boolean offline;
+
+        @Override
+        public List<OutboxDrainer.Outcome> send(List<OutboxEntry> entries) throws IOException {
+            if (offline) {
+                throw new IOException("offline");
+            }
+            batchSizes.add(entries.size());
+            List<OutboxDrainer.Outcome> outcomes = new ArrayList<>();
+            for (OutboxEntry entry : entries) {
+                sent.add(entry.getPayload());
+                if (failing.contains(entry.getPayload())) {
+                    outcomes.add(new OutboxDrainer.Outcome(OutboxDrainer.Result.RETRY,
+                            "503 try again later"));
+                } else if (rejected.contains(entry.getPayload())) {
+                    outcomes.add(new OutboxDrainer.Outcome(OutboxDrainer.Result.REJECTED,
+                            "400 invalid"));
+                } else {
+                    outcomes.add(new OutboxDrainer.Outcome(OutboxDrainer.Result.SENT, null));
+                }
+            }
+            return outcomes;
+        }
+    }
+}
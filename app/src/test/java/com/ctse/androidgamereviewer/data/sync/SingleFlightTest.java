@@ -0,0 +1,189 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that SingleFlight collapses overlapping and repeated refreshes into one run of the
+ * task, against a task which counts its runs.
+ */
+public class SingleFlightTest {
+
+    private static final long INTERVAL_MILLIS = 30_000;
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger runs = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final FakeClock clock = new FakeClock();
+
+    @After
+    public void shutdown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallers_shareOneRun() throws Exception {
+        SingleFlight<Integer> flight = createFlight(executor, blockingTask());
+        final List<Integer> results = new ArrayList<>();
+        SingleFlight.Callback<Integer> callback = new SingleFlight.Callback<Integer>() {
+            @Override
+            public void onComplete(Integer result, Exception error) {
+                synchronized (results) {
+                    results.add(result);
+                }
+            }
+        };
+
+        Future<Integer> first = flight.run(false, callback);
+        for (int i = 0; i < 9; i++) {
+            assertSame(first, flight.run(true, callback));
+        }
+        release.countDown();
+
+        assertEquals(Integer.valueOf(1), first.get(1, TimeUnit.SECONDS));
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+        assertEquals(1, runs.get());
+        assertEquals(10, results.size());
+        assertEquals(1, flight.getStats().getStarted());
+        assertEquals(9, flight.getStats().getJoined());
+    }
+
+    @Test
+    public void recentRun_isSharedUntilTheIntervalPasses() throws Exception {
+        SingleFlight<Integer> flight = createFlight(DIRECT, countingTask());
+        flight.run(false, null);
+
+        clock.now += INTERVAL_MILLIS - 1;
+        assertEquals(Integer.valueOf(1), flight.run(false, null).get());
+        assertEquals(1, runs.get());
+        assertEquals(1, flight.getStats().getThrottled());
+
+        clock.now += 1;
+        assertEquals(Integer.valueOf(2), flight.run(false, null).get());
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void forcedRun_ignoresTheInterval() throws Exception {
+        SingleFlight<Integer> flight = createFlight(DIRECT, countingTask());
+        flight.run(false, null);
+
+        assertEquals(Integer.valueOf(2), flight.run(true, null).get());
+        assertEquals(0, flight.getStats().getCollapsed());
+    }
+
+    @Test
+    public void failedRun_isSharedButNotThrottled() throws Exception {
+        SingleFlight<Integer> flight = createFlight(DIRECT, new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                runs.incrementAndGet();
+                throw new IOException("offline");
+            }
+        });
+        final Exception[] reported = new Exception[1];
+
+        Future<Integer> failed = flight.run(false, new SingleFlight.Callback<Integer>() {
+            @Override
+            public void onComplete(Integer result, Exception error) {
+                reported[0] = error;
+            }
+        });
+        try {
+            failed.get();
+            fail("Failed run was reported as a success");
+        } catch (ExecutionException expected) {
+            assertTrue(reported[0] instanceof IOException);
+        }
+
+        flight.run(false, null);
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void rejectedRun_canBeRequestedAgain() throws Exception {
+        final boolean[] reject = {true};
+        SingleFlight<Integer> flight = createFlight(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (reject[0]) {
+                    throw new RejectedExecutionException("sync queue is full");
+                }
+                command.run();
+            }
+        }, countingTask());
+
+        try {
+            flight.run(false, null);
+            fail("Rejected run was accepted");
+        } catch (RejectedExecutionException expected) {
+            reject[0] = false;
+        }
+
+        assertEquals(Integer.valueOf(1), flight.run(false, null).get());
+        assertEquals(1, flight.getStats().getStarted());
+    }
+
+    private SingleFlight<Integer> createFlight(Executor executor, Callable<Integer> task) {
+        return new SingleFlight<>(executor, task, INTERVAL_MILLIS, clock);
+    }
+
+    private Callable<Integer> countingTask() {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return runs.incrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * Counts its run and waits until the test releases it
+     */
+    private Callable<Integer> blockingTask() {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws InterruptedException {
+                release.await();
+                return runs.incrementAndGet();
+            }
+        };
+    }
+
+    private static class FakeClock implements SingleFlight.Clock {
+
+        private long now = 1_000;
+
+        @Override
+        public long millis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.ctse.androidgamereviewer.data.sync;
+
+import com.ctse.androidgamereviewer.data.entities.Review;
+import com.ctse.androidgamereviewer.data.retrofit.GameWebService;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Streams a 200MB reviews response from a local server through StreamingIngest and checks that
+ * every review arrives in bounded batches while the heap stays far below the size of the
+ * response.
+ */
+public class StreamingIngestTest {
+
+    private static final long PAYLOAD_BYTES = 200L * 1024 * 1024;
+    private static final int BATCH_SIZE = 200;
+    private static final int BODY_LENGTH = 1000;
+    /**
+     * Heap is measured every this many batches
+     */
+    private static final int SAMPLE_INTERVAL = 100;
+
+    private HttpServer server;
+    private GameWebService webService;
+    private volatile int reviewsServed;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/reviews/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                // A length of 0 sends the body chunked, so it is generated while it is sent
+                exchange.sendResponseHeaders(200, 0);
+                try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                        exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+                    writeReviews(out, PAYLOAD_BYTES);
+                }
+            }
+        });
+        server.start();
+
+        webService = new Retrofit.Builder()
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(GameWebService.class);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void largeResponse_isIngestedInBoundedBatchesAndMemory() throws IOException {
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        final long baseline = runtime.totalMemory() - runtime.freeMemory();
+        final long[] peak = {baseline};
+        final int[] batches = {0};
+        final int[] received = {0};
+
+        Response<ResponseBody> response = webService.getReviews().execute();
+        int count = new StreamingIngest<>(new Gson(), Review.class, BATCH_SIZE)
+                .ingest(response.body(), new StreamingIngest.BatchSink<Review>() {
+                    @Override
+                    public void write(List<Review> batch) {
+                        assertTrue(batch.size() <= BATCH_SIZE);
+                        received[0] += batch.size();
+                        if (++batches[0] % SAMPLE_INTERVAL == 0) {
+                            System.gc();
+                            peak[0] = Math.max(peak[0],
+                                    runtime.totalMemory() - runtime.freeMemory());
+                        }
+                    }
+                });
+
+        assertEquals(reviewsServed, count);
+        assertEquals(count, received[0]);
+        assertTrue("Only " + count + " reviews streamed",
+                (long) count * BODY_LENGTH >= PAYLOAD_BYTES * 9 / 10);
+        long growth = peak[0] - baseline;
+        assertTrue("Heap grew by " + growth + " bytes", growth < PAYLOAD_BYTES / 8);
+    }
+
+    @Test
+    public void lastBatch_holdsTheRemainder() throws IOException {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"_id\":\"r").append(i).append("\"}");
+        }
+        json.append("]");
+        final int[] sizes = new int[3];
+        final int[] batches = {0};
+
+        int count = new StreamingIngest<>(new Gson(), Review.class, 2).ingest(
+                new StringReader(json.toString()), new StreamingIngest.BatchSink<Review>() {
+                    @Override
+                    public void write(List<Review> batch) {
+                        sizes[batches[0]++] = batch.size();
+                    }
+                });
+
+        assertEquals(5, count);
+        assertEquals(Arrays.toString(new int[]{2, 2, 1}), Arrays.toString(sizes));
+    }
+
+    @Test
+    public void truncatedResponse_fails() {
+        try {
+            new StreamingIngest<>(new Gson(), Review.class, 2).ingest(
+                    new StringReader("[{\"_id\":\"r1\"},{\"_id\":"),
+                    new StreamingIngest.BatchSink<Review>() {
+                        @Override
+                        public void write(List<Review> batch) {
+                        }
+                    });
+            fail("Truncated response was accepted");
+        } catch (IOException expected) {
+            // The batches before the truncation would stay committed
+        }
+    }
+
+    /**
+     * Writes a JSON array of reviews until it is at least the given number of bytes long.
+     */
+    private void writeReviews(Writer out, long bytes) throws IOException {
+        char[] body = new char[BODY_LENGTH];
+        Arrays.fill(body, 'x');
+        String text = new String(body);
+
+        out.write('[');
+        long written = 1;
+        int count = 0;
+        while (written < bytes) {
+            String review = (count == 0 ? "" : ",") + "{\"_id\":\"review" + count
+                    + "\",\"gameId\":\"game" + (count % 500) + "\",\"title\":\"Review " + count
+                    + "\",\"body\":\"" + text + "\",\"date\":\"2019-04-01\",\"rating\":"
+                    + (count % 5 + 1) + "}";
+            out.write(review);
+            written += review.length();
+            count++;
+        }
+        // Counted before the array is closed, so the client never reads a stale count
+        reviewsServed = count;
+        out.write(']');
+    }
+}